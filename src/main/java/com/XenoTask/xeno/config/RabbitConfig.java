@@ -1,7 +1,7 @@
 package com.xenotask.xeno.config;
 
 import org.springframework.amqp.core.*;
-import org.springframework.amqp.rabbit.config.SimpleRabbitListenerContainerFactory;
+import org.springframework.amqp.rabbit.config.DirectRabbitListenerContainerFactory;
 import org.springframework.amqp.rabbit.connection.ConnectionFactory;
 import org.springframework.amqp.rabbit.core.RabbitTemplate;
 import org.springframework.amqp.support.converter.Jackson2JsonMessageConverter;
@@ -20,11 +20,8 @@ public class RabbitConfig {
     @Value("${sync.rabbit.dlq-routing-key:dlq}")
     private String dlqRoutingKey;
 
-    @Value("${sync.rabbit.listener.concurrent-consumers:2}")
-    private int concurrentConsumers;
-
-    @Value("${sync.rabbit.listener.max-concurrent-consumers:8}")
-    private int maxConcurrentConsumers;
+    @Value("${sync.rabbit.listener.consumers-per-queue:1}")
+    private int consumersPerQueue;
 
     @Value("${sync.rabbit.listener.default-requeue-rejected:false}")
     private boolean defaultRequeueRejected;
@@ -54,14 +51,20 @@ public class RabbitConfig {
         return template;
     }
 
+    /**
+     * One consumer per tenant queue with prefetch 1 and manual ack: a tenant never has more than one job in flight
+     * on this instance, and x-single-active-consumer on the queue extends that across instances. The listener
+     * hands jobs to TenantFairScheduler and acks when they finish.
+     */
     @Bean
-    public SimpleRabbitListenerContainerFactory rabbitListenerContainerFactory(ConnectionFactory cf, Jackson2JsonMessageConverter converter) {
-        SimpleRabbitListenerContainerFactory factory = new SimpleRabbitListenerContainerFactory();
+    public DirectRabbitListenerContainerFactory rabbitListenerContainerFactory(ConnectionFactory cf, Jackson2JsonMessageConverter converter) {
+        DirectRabbitListenerContainerFactory factory = new DirectRabbitListenerContainerFactory();
         factory.setConnectionFactory(cf);
         factory.setMessageConverter(converter);
         factory.setDefaultRequeueRejected(defaultRequeueRejected);
-        factory.setConcurrentConsumers(concurrentConsumers);
-        factory.setMaxConcurrentConsumers(maxConcurrentConsumers);
+        factory.setConsumersPerQueue(consumersPerQueue);
+        factory.setPrefetchCount(1);
+        factory.setAcknowledgeMode(AcknowledgeMode.MANUAL);
         return factory;
     }
 }
@@ -1,10 +1,24 @@
 package com.xenotask.xeno.config;
 
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.httpcomponents.hc5.PoolingHttpClientConnectionManagerMetricsBinder;
+import org.apache.hc.client5.http.config.ConnectionConfig;
+import org.apache.hc.client5.http.config.RequestConfig;
+import org.apache.hc.client5.http.impl.DefaultConnectionKeepAliveStrategy;
+import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
+import org.apache.hc.client5.http.impl.classic.HttpClients;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManager;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManagerBuilder;
+import org.apache.hc.core5.http.EndpointDetails;
+import org.apache.hc.core5.http.protocol.HttpCoreContext;
+import org.apache.hc.core5.pool.PoolReusePolicy;
+import org.apache.hc.core5.util.TimeValue;
+import org.apache.hc.core5.util.Timeout;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
-import org.springframework.http.client.BufferingClientHttpRequestFactory;
-import org.springframework.http.client.SimpleClientHttpRequestFactory;
+import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
 import org.springframework.web.client.RestTemplate;
 
 
@@ -17,11 +31,59 @@ public class ShopifyConfig {
     @Value("${shopify.http.read-timeout-ms:30000}")
     private int readTimeoutMs;
 
+    @Value("${shopify.http.max-connections-total:50}")
+    private int maxConnectionsTotal;
+
+    @Value("${shopify.http.max-connections-per-shop:4}")
+    private int maxConnectionsPerShop;
+
+    @Value("${shopify.http.idle-evict-seconds:30}")
+    private int idleEvictSeconds;
+
+    /** Keep-alive pool; each shop domain is its own route, so max-connections-per-shop caps one store. */
+    @Bean(destroyMethod = "close")
+    public PoolingHttpClientConnectionManager shopifyConnectionManager() {
+        return PoolingHttpClientConnectionManagerBuilder.create()
+                .setMaxConnTotal(maxConnectionsTotal)
+                .setMaxConnPerRoute(maxConnectionsPerShop)
+                .setConnPoolPolicy(PoolReusePolicy.LIFO) // hot connections first, idle ones age out
+                .setDefaultConnectionConfig(ConnectionConfig.custom()
+                        .setConnectTimeout(Timeout.ofMilliseconds(connectTimeoutMs))
+                        .setSocketTimeout(Timeout.ofMilliseconds(readTimeoutMs))
+                        .setTimeToLive(TimeValue.ofMinutes(5))
+                        .build())
+                .build();
+    }
+
+    /** Gzip/deflate is negotiated and decoded by the client itself (content compression is on by default). */
+    @Bean(destroyMethod = "close")
+    public CloseableHttpClient shopifyHttpClient(PoolingHttpClientConnectionManager shopifyConnectionManager, MeterRegistry meterRegistry) {
+        return HttpClients.custom()
+                .setConnectionManager(shopifyConnectionManager)
+                .setKeepAliveStrategy(DefaultConnectionKeepAliveStrategy.INSTANCE)
+                .setDefaultRequestConfig(RequestConfig.custom()
+                        .setConnectionRequestTimeout(Timeout.ofMilliseconds(connectTimeoutMs))
+                        .setResponseTimeout(Timeout.ofMilliseconds(readTimeoutMs))
+                        .build())
+                .evictExpiredConnections()
+                .evictIdleConnections(TimeValue.ofSeconds(idleEvictSeconds))
+                .addResponseInterceptorLast((response, entity, context) -> {
+                    // request count > 1 means this exchange rode an already open connection
+                    EndpointDetails endpoint = HttpCoreContext.adapt(context).getEndpointDetails();
+                    boolean reused = endpoint != null && endpoint.getRequestCount() > 1;
+                    meterRegistry.counter("shopify.http.requests", "connection", reused ? "reused" : "new").increment();
+                })
+                .build();
+    }
+
+    @Bean
+    public MeterBinder shopifyConnectionPoolMetrics(PoolingHttpClientConnectionManager shopifyConnectionManager) {
+        return new PoolingHttpClientConnectionManagerMetricsBinder(shopifyConnectionManager, "shopify");
+    }
+
     @Bean
-    public RestTemplate restTemplate() {
-        SimpleClientHttpRequestFactory factory = new SimpleClientHttpRequestFactory();
-        factory.setConnectTimeout(connectTimeoutMs);
-        factory.setReadTimeout(readTimeoutMs);
-        return new RestTemplate(new BufferingClientHttpRequestFactory(factory));
+    public RestTemplate restTemplate(CloseableHttpClient shopifyHttpClient) {
+        // streams straight from the pooled connection; no BufferingClientHttpRequestFactory copy of each body
+        return new RestTemplate(new HttpComponentsClientHttpRequestFactory(shopifyHttpClient));
     }
 }
@@ -144,6 +144,16 @@ public class AnalyticsController {
         return ResponseEntity.ok(analyticsService.cancellationRate(tenant, start, end));
     }
 
+    @GetMapping("/kpis")
+    public ResponseEntity<Map<String,Object>> kpis(@RequestHeader("X-Tenant-ID") String tenant,
+                                                   @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime start,
+                                                   @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime end) {
+        if (!hasAccessToTenant(tenant)) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
+        }
+        return ResponseEntity.ok(analyticsService.kpis(tenant, start, end));
+    }
+
     private boolean hasAccessToTenant(String tenantId) {
         try {
             Integer userId = getCurrentUserId();
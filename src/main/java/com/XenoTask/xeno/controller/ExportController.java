@@ -0,0 +1,104 @@
+package com.xenotask.xeno.controller;
+
+import com.xenotask.xeno.security.UserPrincipal;
+import com.xenotask.xeno.service.OrderExportService;
+import com.xenotask.xeno.service.TenantService;
+import com.xenotask.xeno.service.UserTenantAccessService;
+import io.swagger.v3.oas.annotations.security.SecurityRequirement;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.time.LocalDateTime;
+import java.util.concurrent.Semaphore;
+
+@Slf4j
+@Tag(name = "Export", description = "Streaming CSV/NDJSON exports of orders and line items")
+@SecurityRequirement(name = "bearerAuth")
+@RestController
+@RequestMapping("/api/export")
+public class ExportController {
+
+    private final OrderExportService exportService;
+    private final TenantService tenantService;
+    private final UserTenantAccessService userTenantAccessService;
+    private final Semaphore exportSlots; // each running export holds a pooled connection
+
+    public ExportController(OrderExportService exportService, TenantService tenantService, UserTenantAccessService userTenantAccessService,
+                            @Value("${export.max-concurrent:2}") int maxConcurrent) {
+        this.exportService = exportService;
+        this.tenantService = tenantService;
+        this.userTenantAccessService = userTenantAccessService;
+        this.exportSlots = new Semaphore(maxConcurrent);
+    }
+
+    /** dataset=orders|line-items, format=csv|ndjson; rows are written as they come off the cursor */
+    @GetMapping("/{dataset}")
+    public ResponseEntity<StreamingResponseBody> export(@RequestHeader("X-Tenant-ID") String tenant,
+                                                        @PathVariable String dataset,
+                                                        @RequestParam(defaultValue = "csv") String format,
+                                                        @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime start,
+                                                        @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime end) {
+        if (!hasAccessToTenant(tenant)) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
+        }
+        OrderExportService.Dataset ds;
+        OrderExportService.Format fmt;
+        try {
+            ds = OrderExportService.dataset(dataset);
+            fmt = OrderExportService.format(format);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
+        // TenantContext is request-thread bound; the body is written on the async thread
+        String tenantId = tenantService.resolveTenantIdOrDomain();
+        if (!exportSlots.tryAcquire()) {
+            return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS).header(HttpHeaders.RETRY_AFTER, "30").build();
+        }
+        StreamingResponseBody body = out -> {
+            try {
+                exportService.export(tenantId, ds, fmt, start, end, out);
+            } finally {
+                exportSlots.release();
+            }
+        };
+        String filename = ds.name().toLowerCase().replace('_', '-') + "-" + start.toLocalDate() + "-" + end.toLocalDate() + "." + fmt.extension;
+        return ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType(fmt.contentType + ";charset=UTF-8"))
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + filename + "\"")
+                .body(body);
+    }
+
+    private boolean hasAccessToTenant(String tenantId) {
+        try {
+            Integer userId = getCurrentUserId();
+            return userTenantAccessService.hasAccessToTenant(userId, tenantId);
+        } catch (Exception e) {
+            log.warn("Error checking tenant access: {}", e.getMessage());
+            return false;
+        }
+    }
+
+    private Integer getCurrentUserId() {
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        if (authentication == null || !authentication.isAuthenticated()) {
+            throw new IllegalStateException("User not authenticated");
+        }
+
+        if (authentication.getPrincipal() instanceof UserPrincipal) {
+            UserPrincipal userPrincipal = (UserPrincipal) authentication.getPrincipal();
+            return userPrincipal.getUserId();
+        }
+
+        throw new IllegalStateException("Invalid authentication principal");
+    }
+}
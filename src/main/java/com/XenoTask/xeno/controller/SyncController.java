@@ -1,10 +1,10 @@
 package com.xenotask.xeno.controller;
 
 import com.xenotask.xeno.service.DataSyncService;
+import com.xenotask.xeno.service.FleetSyncJob;
 import com.xenotask.xeno.service.SyncService;
 import io.swagger.v3.oas.annotations.security.SecurityRequirement;
 import io.swagger.v3.oas.annotations.tags.Tag;
-import jakarta.validation.constraints.NotNull;
 import lombok.RequiredArgsConstructor;
 import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.http.ResponseEntity;
@@ -34,25 +34,40 @@ public class SyncController {
         return ResponseEntity.ok(Map.of(k1,v1,"type","full","tenantId", tenantId));
     }
 
-    // Per-tenant incremental sync
+    // Per-tenant initial load via Shopify bulk operations
+    @PostMapping("/bulk")
+    public ResponseEntity<Map<String,Object>> bulk(@RequestHeader("X-Tenant-ID") String tenantId) {
+        syncService.bulkSync(tenantId);
+        return ResponseEntity.ok(Map.of(k1,v1,"type","bulk","tenantId", tenantId));
+    }
+
+    // Per-tenant incremental sync; without since each entity resumes from its stored watermark
     @PostMapping("/incremental")
     public ResponseEntity<Map<String,Object>> incremental(@RequestHeader("X-Tenant-ID") String tenantId,
-                                                          @RequestParam("since") @NotNull @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime since) {
+                                                          @RequestParam(value = "since", required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime since) {
         syncService.incrementalSync(tenantId, since);
-        return ResponseEntity.ok(Map.of(k1,v1,"type","incremental","since", since, "tenantId", tenantId));
+        return ResponseEntity.ok(Map.of(k1,v1,"type","incremental","since", since == null ? "watermark" : since, "tenantId", tenantId));
     }
 
-    // Global full sync (all active tenants) - admin use
+    // Global full sync (all active tenants) - admin use; runs in the background, poll /all/{jobId}
     @PostMapping("/full/all")
     public ResponseEntity<Map<String,Object>> fullAll() {
-        dataSyncService.fullSyncAll();
-        return ResponseEntity.ok(Map.of(k1,v1,"type","full_all"));
+        FleetSyncJob job = dataSyncService.fullSyncAll();
+        return ResponseEntity.accepted().body(Map.of(k1,v1,"type","full_all","jobId", job.getJobId()));
     }
 
     // Global incremental sync (all active tenants)
     @PostMapping("/incremental/all")
-    public ResponseEntity<Map<String,Object>> incrementalAll(@RequestParam("since") @NotNull @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime since) {
-        dataSyncService.incrementalSyncAll(since);
-        return ResponseEntity.ok(Map.of(k1,v1,"type","incremental_all","since", since));
+    public ResponseEntity<Map<String,Object>> incrementalAll(@RequestParam(value = "since", required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime since) {
+        FleetSyncJob job = dataSyncService.incrementalSyncAll(since);
+        return ResponseEntity.accepted().body(Map.of(k1,v1,"type","incremental_all","since", since == null ? "watermark" : since,"jobId", job.getJobId()));
+    }
+
+    // Progress of a fleet-wide sync
+    @GetMapping("/all/{jobId}")
+    public ResponseEntity<Map<String,Object>> fleetJob(@PathVariable String jobId) {
+        return dataSyncService.findJob(jobId)
+                .map(job -> ResponseEntity.ok(job.snapshot()))
+                .orElseGet(() -> ResponseEntity.notFound().build());
     }
 }
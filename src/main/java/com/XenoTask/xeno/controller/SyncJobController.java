@@ -1,5 +1,6 @@
 package com.xenotask.xeno.controller;
 
+import com.xenotask.xeno.messaging.SyncJobCoalescer;
 import com.xenotask.xeno.messaging.SyncJobMessage;
 import com.xenotask.xeno.messaging.TenantQueueProvider;
 import com.xenotask.xeno.service.TenantService;
@@ -31,8 +32,7 @@ public class SyncJobController {
     private final RabbitTemplate rabbitTemplate;
     private final TenantService tenantService;
     private final TenantQueueProvider tenantQueueProvider;
-
-    private String queueName(String tenantId) { return "sync.jobs." + tenantId; }
+    private final SyncJobCoalescer coalescer;
 
     @PostMapping
     public ResponseEntity<Map<String,Object>> enqueue(@RequestBody SyncJobRequest request) {
@@ -40,27 +40,24 @@ public class SyncJobController {
         if (!type.equals("FULL") && !type.equals(SYNC_TYPE)) {
             return ResponseEntity.badRequest().body(Map.of("error","type must be FULL or INCREMENTAL"));
         }
-        LocalDateTime since = request.getSince();
-        if (type.equals(SYNC_TYPE) && since == null) {
-            since = LocalDateTime.now().minusMinutes(30); // default window
-        }
+        LocalDateTime since = request.getSince(); // null => each entity's stored watermark
         int enqueued = 0;
+        int merged = 0;
         if (request.getTenantId() == null || request.getTenantId().equalsIgnoreCase("ALL")) {
             var tenants = tenantService.listActiveTenants();
             for (var t : tenants) {
-                enqueueOne(t.getTenantId(), type, since);
-                enqueued++;
+                if (enqueueOne(t.getTenantId(), type, since)) enqueued++; else merged++;
             }
         } else {
             tenantService.getRequiredByTenantId(request.getTenantId());
-            enqueueOne(request.getTenantId(), type, since);
-            enqueued = 1;
+            if (enqueueOne(request.getTenantId(), type, since)) enqueued++; else merged++;
         }
         Map<String,Object> resp = new HashMap<>();
         resp.put("status","enqueued");
         resp.put("jobs", enqueued);
+        resp.put("merged", merged); // folded into a job already queued for the tenant
         resp.put("type", type);
-        resp.put("since", since);
+        resp.put("since", since == null ? "watermark" : since);
         return ResponseEntity.ok(resp);
     }
 
@@ -72,21 +69,28 @@ public class SyncJobController {
         if (!type.equals("FULL") && !type.equals(SYNC_TYPE)) {
             return ResponseEntity.badRequest().body(Map.of("error","type must be FULL or INCREMENTAL"));
         }
-        if (type.equals(SYNC_TYPE) && since == null) since = LocalDateTime.now().minusMinutes(30);
         tenantService.getRequiredByTenantId(tenantId);
-        enqueueOne(tenantId, type, since);
-        return ResponseEntity.ok(Map.of("status","enqueued","tenantId", tenantId,"type", type,"since", since));
+        boolean published = enqueueOne(tenantId, type, since);
+        return ResponseEntity.ok(Map.of("status", published ? "enqueued" : "merged","tenantId", tenantId,"type", type,"since", since == null ? "watermark" : since));
     }
 
-    private void enqueueOne(String tenantId, String type, LocalDateTime since) {
+    /** false when the job was merged into one already queued for the tenant */
+    private boolean enqueueOne(String tenantId, String type, LocalDateTime since) {
         tenantQueueProvider.ensureQueue(tenantId);
         SyncJobMessage msg = SyncJobMessage.builder()
                 .tenantId(tenantId)
                 .type(type)
                 .since(type.equals(SYNC_TYPE) ? since : null)
                 .build();
-        rabbitTemplate.convertAndSend(queueName(tenantId), msg);
+        if (!coalescer.offer(msg)) return false;
+        try {
+            rabbitTemplate.convertAndSend(tenantQueueProvider.queueName(tenantId), msg);
+        } catch (RuntimeException e) {
+            coalescer.discard(msg);
+            throw e;
+        }
         log.info("Manually enqueued job type={} tenant={} since={}", type, tenantId, msg.getSince());
+        return true;
     }
 
     @Data
@@ -95,7 +99,7 @@ public class SyncJobController {
         private String type; // FULL / INCREMENTAL
         private String tenantId; // null or 'ALL' => all tenants
         @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME)
-        private LocalDateTime since; // optional for incremental
+        private LocalDateTime since; // optional for incremental; defaults to the stored watermark
     }
 }
 
@@ -31,6 +31,12 @@ public class TenantController {
                 .orElse(ResponseEntity.notFound().build());
     }
 
+    // Pause (false) or resume (true) syncing for the tenant
+    @PutMapping("/{tenantId}/active")
+    public ResponseEntity<Tenant> setActive(@PathVariable String tenantId, @RequestParam boolean value) {
+        return ResponseEntity.ok(tenantService.setActive(tenantId, value));
+    }
+
     @DeleteMapping("/{tenantId}")
     public ResponseEntity<Void> deboard(@PathVariable String tenantId) {
         tenantService.deboardTenant(tenantId);
@@ -0,0 +1,33 @@
+package com.xenotask.xeno.controller;
+
+import com.xenotask.xeno.service.ShopifyWebhookService;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+/**
+ * Shopify webhook receiver (no JWT; authenticated by the X-Shopify-Hmac-Sha256 signature).
+ * Payloads are only verified and buffered here; persistence happens in the background flush.
+ */
+@Tag(name = "Webhooks", description = "Shopify webhook intake")
+@RestController
+@RequestMapping("/api/webhooks")
+@RequiredArgsConstructor
+public class WebhookController {
+
+    private final ShopifyWebhookService webhookService;
+
+    @PostMapping("/shopify")
+    public ResponseEntity<Void> shopify(@RequestHeader(value = "X-Shopify-Shop-Domain", required = false) String shopDomain,
+                                        @RequestHeader(value = "X-Shopify-Topic", required = false) String topic,
+                                        @RequestHeader(value = "X-Shopify-Hmac-Sha256", required = false) String hmac,
+                                        @RequestBody byte[] body) {
+        return switch (webhookService.accept(shopDomain, topic, hmac, body)) {
+            case ACCEPTED, IGNORED -> ResponseEntity.ok().build(); // unsupported topics are acknowledged so Shopify stops retrying
+            case UNAUTHORIZED -> ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
+            case BUSY -> ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).build();
+        };
+    }
+}
@@ -13,7 +13,8 @@ import java.util.List;
 }, indexes = {
         @Index(name = "idx_customer_tenant", columnList = "tenant_id"),
         @Index(name = "idx_customer_email", columnList = "tenant_id,email"),
-        @Index(name = "idx_customer_total_spent", columnList = "tenant_id,total_spent")
+        @Index(name = "idx_customer_total_spent", columnList = "tenant_id,total_spent"),
+        @Index(name = "idx_customer_first_order", columnList = "tenant_id,first_order_date")
 })
 @Getter
 @Setter
@@ -69,6 +70,9 @@ public class Customer {
     @Column(name = "last_order_date")
     private LocalDateTime lastOrderDate;
 
+    @Column(name = "first_order_date")
+    private LocalDateTime firstOrderDate; // min(orders.created_at), kept by CustomerRepository.refreshOrderMetrics
+
     @Lob
     @Column(name = "tags", columnDefinition = "TEXT")
     private String tags;
@@ -77,10 +81,13 @@ public class Customer {
     @Column(name = "note", columnDefinition = "TEXT")
     private String note;
 
+    @Column(name = "payload_hash")
+    private Long payloadHash; // PayloadFingerprint of the last applied Shopify payload; null = unknown
+
     @OneToMany(mappedBy = "customer", cascade = CascadeType.ALL, orphanRemoval = true)
     private List<CustomerAddress> addresses;
 
-    @OneToMany(mappedBy = "customer", cascade = CascadeType.ALL)
+    @OneToMany(mappedBy = "customer") // never cascaded: orders outlive their customer (see OrderUpsertService.detachCustomers)
     private List<Order> orders;
 
     @OneToMany(mappedBy = "customer", cascade = CascadeType.ALL)
@@ -0,0 +1,59 @@
+package com.xenotask.xeno.entity;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+
+/**
+ * Per-tenant totals of the orders created on one day (orders.created_at date), recomputed from the raw rows
+ * for every day an order upsert touches. AnalyticsService reads whole days from here.
+ */
+@Entity
+@Table(name = "daily_order_rollups", uniqueConstraints = {
+        @UniqueConstraint(name = "uk_rollup_tenant_day", columnNames = {"tenant_id", "day"})
+})
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class DailyOrderRollup {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Integer id;
+
+    @ManyToOne(fetch = FetchType.LAZY, optional = false)
+    @JoinColumn(name = "tenant_id", referencedColumnName = "tenant_id", nullable = false)
+    private Tenant tenant;
+
+    @Column(name = "day", nullable = false)
+    private LocalDate day;
+
+    @Column(name = "revenue", precision = 15, scale = 2)
+    private BigDecimal revenue;
+
+    @Column(name = "orders")
+    private Long orders;
+
+    @Column(name = "discounts", precision = 15, scale = 2)
+    private BigDecimal discounts;
+
+    @Column(name = "cancellations")
+    private Long cancellations;
+
+    @Column(name = "units")
+    private Long units;
+
+    @Column(name = "item_orders")
+    private Long itemOrders; // orders with at least one line item (UPT denominator)
+
+    @Column(name = "customers")
+    private Long customers; // distinct customers that day; not additive across days
+
+    @Column(name = "updated_at")
+    private LocalDateTime updatedAt;
+}
@@ -93,6 +93,9 @@ public class Order {
     @Column(name = "note", columnDefinition = "TEXT")
     private String note;
 
+    @Column(name = "payload_hash")
+    private Long payloadHash; // PayloadFingerprint of the last applied Shopify payload; null = unknown
+
     @OneToMany(mappedBy = "order", cascade = CascadeType.ALL, orphanRemoval = true)
     private List<OrderLineItem> lineItems;
 }
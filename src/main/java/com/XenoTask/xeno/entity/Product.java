@@ -63,6 +63,9 @@ public class Product {
     @Column(name = "published_at")
     private LocalDateTime publishedAt;
 
+    @Column(name = "payload_hash")
+    private Long payloadHash; // PayloadFingerprint of the last applied Shopify payload; null = unknown
+
     @OneToMany(mappedBy = "product", cascade = CascadeType.ALL, orphanRemoval = true)
     private List<ProductVariant> variants;
 
@@ -0,0 +1,63 @@
+package com.xenotask.xeno.entity;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+import java.time.LocalDateTime;
+
+/**
+ * Last committed position of a paged Shopify walk. page_info is the cursor of the next page to fetch
+ * (null = first page); an uncompleted row is picked up by the next sync of the same endpoint and scope.
+ */
+@Entity
+@Table(name = "sync_checkpoints", indexes = {
+        @Index(name = "idx_checkpoint_scope", columnList = "tenant_id,endpoint,completed"),
+        @Index(name = "idx_checkpoint_log", columnList = "sync_log_id")
+})
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class SyncCheckpoint {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Integer id;
+
+    @ManyToOne(fetch = FetchType.LAZY, optional = false)
+    @JoinColumn(name = "tenant_id", referencedColumnName = "tenant_id", nullable = false)
+    private Tenant tenant;
+
+    @ManyToOne(fetch = FetchType.LAZY, optional = false)
+    @JoinColumn(name = "sync_log_id", nullable = false)
+    private SyncLog syncLog; // segment that last advanced this checkpoint
+
+    @Column(name = "endpoint", length = 100, nullable = false)
+    private String endpoint; // e.g. /orders.json
+
+    @Column(name = "scope", length = 500, nullable = false)
+    @Builder.Default
+    private String scope = ""; // sorted filter params, e.g. updated_at_min=...
+
+    @Column(name = "page_info", length = 1024)
+    private String pageInfo;
+
+    @Column(name = "pages_committed")
+    @Builder.Default
+    private Integer pagesCommitted = 0;
+
+    @Column(name = "records_committed")
+    @Builder.Default
+    private Long recordsCommitted = 0L;
+
+    @Column(name = "completed", nullable = false)
+    @Builder.Default
+    private Boolean completed = false;
+
+    @Column(name = "walk_started_at")
+    private LocalDateTime walkStartedAt; // UTC; when the first page of this walk was requested
+
+    @Column(name = "updated_at")
+    private LocalDateTime updatedAt;
+}
@@ -45,4 +45,20 @@ public class SyncLog {
 
     @Column(name = "completed_at")
     private LocalDateTime completedAt;
+
+    @Column(name = "rows_written")
+    private Long rowsWritten; // entity + child rows sent to the DB
+
+    @Column(name = "records_skipped")
+    private Long recordsSkipped; // unchanged payloads not written
+
+    @Column(name = "duration_ms")
+    private Long durationMs;
+
+    @Column(name = "rows_per_second")
+    private Double rowsPerSecond;
+
+    @Lob
+    @Column(name = "metrics", columnDefinition = "TEXT")
+    private String metrics; // JSON snapshot of SyncMetrics counters (stage timings etc.)
 }
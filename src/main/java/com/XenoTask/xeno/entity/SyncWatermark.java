@@ -0,0 +1,39 @@
+package com.xenotask.xeno.entity;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+import java.time.LocalDateTime;
+
+/**
+ * Incremental sync high-water mark: the newest Shopify updated_at (UTC) known to be committed for one tenant and
+ * entity with no gap before it. Incremental syncs start from here; it only ever moves forward.
+ */
+@Entity
+@Table(name = "sync_watermarks", uniqueConstraints = {
+        @UniqueConstraint(name = "uk_watermark_tenant_entity", columnNames = {"tenant_id", "entity"})
+})
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class SyncWatermark {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Integer id;
+
+    @ManyToOne(fetch = FetchType.LAZY, optional = false)
+    @JoinColumn(name = "tenant_id", referencedColumnName = "tenant_id", nullable = false)
+    private Tenant tenant;
+
+    @Column(name = "entity", length = 50, nullable = false)
+    private String entity; // customers, products, orders
+
+    @Column(name = "high_water")
+    private LocalDateTime highWater;
+
+    @Column(name = "updated_at")
+    private LocalDateTime updatedAt;
+}
@@ -61,6 +61,12 @@ public class Tenant {
     @Column(name = "timezone", length = 100)
     private String timezone;
 
+    @Column(name = "rollups_built_at")
+    private LocalDateTime rollupsBuiltAt; // null until daily_order_rollups were backfilled for this tenant
+
+    @Column(name = "first_order_dates_built_at")
+    private LocalDateTime firstOrderDatesBuiltAt; // null until customers.first_order_date was backfilled
+
     @OneToMany(mappedBy = "tenant", cascade = CascadeType.ALL, orphanRemoval = true)
     @JsonIgnore
     private List<Customer> customers;
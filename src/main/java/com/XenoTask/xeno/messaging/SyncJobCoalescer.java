@@ -0,0 +1,131 @@
+package com.xenotask.xeno.messaging;
+
+import com.xenotask.xeno.service.TenantLifecycleEvent;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Per-tenant registry of the sync job that is queued but not yet picked up. Producers {@link #offer} a job and
+ * only publish when no job is pending; otherwise the new job is merged into the pending one (FULL supersedes
+ * INCREMENTAL, incrementals keep the earliest explicit since). The listener {@link #claim}s the pending job when
+ * its message arrives and runs the merged version. Messages this instance does not know about (other instances,
+ * older messages without a jobId) run unchanged.
+ * <p>A pending job whose message this instance never receives (another instance consumed it, it was dead-lettered,
+ * the queue went away) would otherwise swallow every later offer. Entries therefore expire after
+ * sync.coalesce.pending-ttl-minutes unless the message was delivered here, and are dropped when the job is
+ * rejected or the tenant is deactivated or removed.
+ */
+@Component
+public class SyncJobCoalescer {
+    private static final Logger log = LoggerFactory.getLogger(SyncJobCoalescer.class);
+
+    private final Map<String, Pending> pending = new ConcurrentHashMap<>();
+    private final MeterRegistry meterRegistry;
+    private final long ttlNanos;
+
+    public SyncJobCoalescer(MeterRegistry meterRegistry,
+                            @Value("${sync.coalesce.pending-ttl-minutes:10}") long ttlMinutes) {
+        this(meterRegistry, Duration.ofMinutes(ttlMinutes));
+    }
+
+    SyncJobCoalescer(MeterRegistry meterRegistry, Duration ttl) {
+        this.meterRegistry = meterRegistry;
+        this.ttlNanos = ttl.toNanos();
+    }
+
+    /** Returns true when the caller must publish msg (now carrying a jobId); false when it was merged into the pending job. */
+    public boolean offer(SyncJobMessage msg) {
+        boolean[] publish = new boolean[1];
+        long now = System.nanoTime();
+        Pending merged = pending.compute(msg.getTenantId(), (tenantId, current) -> {
+            if (current == null || current.expired(now, ttlNanos)) {
+                if (current != null) log.warn("Dropping stale pending sync job tenant={} jobId={}", tenantId, current.job.getJobId());
+                msg.setJobId(UUID.randomUUID().toString());
+                publish[0] = true;
+                return new Pending(copy(msg), now);
+            }
+            merge(current.job, msg);
+            return current;
+        });
+        if (!publish[0]) {
+            meterRegistry.counter("sync.jobs.coalesced", "type", msg.getType()).increment();
+            log.info("Coalesced {} sync job into pending tenant={} pending={}", msg.getType(), msg.getTenantId(), merged.job);
+        }
+        return publish[0];
+    }
+
+    /** Publishing failed or the job was rejected: forget the pending entry so the next offer publishes again. */
+    public void discard(SyncJobMessage msg) {
+        if (msg.getJobId() == null || msg.getTenantId() == null) return;
+        pending.computeIfPresent(msg.getTenantId(), (k, v) -> msg.getJobId().equals(v.job.getJobId()) ? null : v);
+    }
+
+    /** The message reached this instance and waits for a scheduler slot: it will be claimed, so stop the TTL. */
+    public void delivered(SyncJobMessage msg) {
+        if (msg.getJobId() == null || msg.getTenantId() == null) return;
+        pending.computeIfPresent(msg.getTenantId(), (k, v) -> {
+            if (msg.getJobId().equals(v.job.getJobId())) v.delivered = true;
+            return v;
+        });
+    }
+
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT, fallbackExecution = true)
+    public void onTenantLifecycle(TenantLifecycleEvent event) {
+        if (event.type() != TenantLifecycleEvent.Type.ACTIVATED) pending.remove(event.tenantId());
+    }
+
+    /** The job to run for a delivered message: the merged pending job when the message is the one we published. */
+    public SyncJobMessage claim(SyncJobMessage delivered) {
+        if (delivered.getJobId() == null || delivered.getTenantId() == null) return delivered;
+        SyncJobMessage[] claimed = new SyncJobMessage[1];
+        pending.computeIfPresent(delivered.getTenantId(), (k, current) -> {
+            if (!delivered.getJobId().equals(current.job.getJobId())) return current;
+            claimed[0] = current.job;
+            return null; // later offers queue a fresh job behind the running one
+        });
+        return claimed[0] != null ? claimed[0] : delivered;
+    }
+
+    private static void merge(SyncJobMessage into, SyncJobMessage next) {
+        if ("FULL".equalsIgnoreCase(into.getType())) return;
+        if ("FULL".equalsIgnoreCase(next.getType())) {
+            into.setType("FULL");
+            into.setSince(null);
+            return;
+        }
+        // null since = resume from watermarks; an explicit since asks for an older range and wins
+        if (next.getSince() != null && (into.getSince() == null || next.getSince().isBefore(into.getSince()))) {
+            into.setSince(next.getSince());
+        }
+    }
+
+    /** Mutated only inside the map's compute functions */
+    private static final class Pending {
+        final SyncJobMessage job;
+        final long offeredNanos;
+        boolean delivered;
+
+        Pending(SyncJobMessage job, long offeredNanos) {
+            this.job = job;
+            this.offeredNanos = offeredNanos;
+        }
+
+        boolean expired(long now, long ttlNanos) {
+            return !delivered && now - offeredNanos > ttlNanos;
+        }
+    }
+
+    private static SyncJobMessage copy(SyncJobMessage m) {
+        return SyncJobMessage.builder().jobId(m.getJobId()).type(m.getType()).since(m.getSince()).tenantId(m.getTenantId()).build();
+    }
+}
@@ -1,27 +1,54 @@
 package com.xenotask.xeno.messaging;
 
+import com.rabbitmq.client.Channel;
 import com.xenotask.xeno.service.SyncService;
 import lombok.RequiredArgsConstructor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.amqp.rabbit.annotation.RabbitListener;
+import org.springframework.amqp.support.AmqpHeaders;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.messaging.handler.annotation.Header;
 import org.springframework.stereotype.Component;
 
+import java.io.IOException;
+
+/**
+ * Receives at most one unacked job per tenant queue (see RabbitConfig) and hands it to TenantFairScheduler.
+ * The message is acked when the job finishes, or rejected to the DLQ when it fails.
+ */
 @Component
 @RequiredArgsConstructor
 public class SyncJobListener {
     private static final Logger log = LoggerFactory.getLogger(SyncJobListener.class);
+    public static final String LISTENER_ID = "syncJobListener"; // TenantQueueProvider adds/removes queues on it
 
     private final SyncService syncService;
+    private final SyncJobCoalescer coalescer;
+    private final TenantFairScheduler fairScheduler;
 
-    @RabbitListener(queues = "#{tenantQueueProvider.queueNames}")
-    public void handleSyncJob(SyncJobMessage message) {
-        String type = message.getType();
-        if (message.getTenantId() == null) {
+    @Value("${sync.rabbit.listener.default-requeue-rejected:false}")
+    private boolean requeueRejected;
+
+    @RabbitListener(id = LISTENER_ID, queues = "#{tenantQueueProvider.queueNames}")
+    public void handleSyncJob(SyncJobMessage delivered, Channel channel, @Header(AmqpHeaders.DELIVERY_TAG) long deliveryTag) {
+        if (delivered.getTenantId() == null) {
             // not expected in per-tenant queues, but guard
-            log.warn("Received job without tenantId on per-tenant queue: {}", message);
+            log.warn("Received job without tenantId on per-tenant queue: {}", delivered);
+            settle(channel, deliveryTag, null);
             return;
         }
+        coalescer.delivered(delivered);
+        fairScheduler.submit(delivered.getTenantId(), () -> run(delivered), failure -> {
+            if (failure != null) coalescer.discard(delivered); // dead-lettered before claim: don't keep merging into it
+            settle(channel, deliveryTag, failure);
+        });
+    }
+
+    private void run(SyncJobMessage delivered) {
+        // claimed when the job starts, so everything merged while it waited for a slot is included
+        SyncJobMessage message = coalescer.claim(delivered);
+        String type = message.getType();
         if ("FULL".equalsIgnoreCase(type)) {
             syncService.fullSync(message.getTenantId());
         } else {
@@ -29,4 +56,18 @@ public class SyncJobListener {
         }
         log.info("Processed sync job type={} tenant={} since={} success", type, message.getTenantId(), message.getSince());
     }
+
+    private void settle(Channel channel, long deliveryTag, Throwable failure) {
+        try {
+            if (failure == null) {
+                channel.basicAck(deliveryTag, false);
+            } else {
+                log.error("Sync job failed deliveryTag={} msg={}", deliveryTag, failure.getMessage(), failure);
+                channel.basicReject(deliveryTag, requeueRejected);
+            }
+        } catch (IOException e) {
+            // channel gone: the broker redelivers the unacked message
+            log.warn("Could not settle sync job deliveryTag={}: {}", deliveryTag, e.getMessage());
+        }
+    }
 }
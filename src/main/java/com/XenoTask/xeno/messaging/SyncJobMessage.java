@@ -16,5 +16,6 @@ public class SyncJobMessage implements Serializable {
     private String type; // FULL or INCREMENTAL
     private LocalDateTime since; // for incremental
     private String tenantId; // optional: null => all tenants
+    private String jobId; // set by SyncJobCoalescer when published
 }
 
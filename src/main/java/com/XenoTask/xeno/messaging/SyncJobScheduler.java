@@ -9,7 +9,6 @@ import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.scheduling.annotation.Scheduled;
 
-import java.time.LocalDateTime;
 
 @Configuration
 @RequiredArgsConstructor
@@ -18,13 +17,12 @@ public class SyncJobScheduler {
 
     private final RabbitTemplate rabbitTemplate;
     private final TenantService tenantService;
+    private final SyncJobCoalescer coalescer;
 
     @Value("${sync.scheduler.enabled:true}")
     private boolean enabled;
     @Value("${sync.scheduler.mode:FULL}")
     private String mode; // INCREMENTAL or FULL
-    @Value("${sync.scheduler.intervalMinutes:30}")
-    private int intervalMinutes; // used to calculate since for incremental
     @Value("${sync.scheduler.targetTenant:ALL}")
     private String targetTenant; // specific tenant id or ALL
     @Value("${sync.scheduler.cron:0 0/30 * * * *}")
@@ -33,28 +31,34 @@ public class SyncJobScheduler {
     @Value("${sync.messaging.queue-prefix:sync.jobs.}")
     private String queuePrefix;
 
-    private String queueName(String tenantId) { return queuePrefix + tenantId; }
+    private String queueName(String tenantId) { return queuePrefix + TenantQueueProvider.QUEUE_VERSION + tenantId; }
 
     // Runs per schedule (default every 30 minutes). Use sync.scheduler.cron to override.
     @Scheduled(cron = "${sync.scheduler.cron:0 0/30 * * * *}")
     public void enqueueSync() {
         if (!enabled) return;
-        LocalDateTime now = LocalDateTime.now();
         if ("ALL".equalsIgnoreCase(targetTenant)) {
-            tenantService.listActiveTenants().forEach(t -> sendForTenant(t.getTenantId(), now));
+            tenantService.listActiveTenants().forEach(t -> sendForTenant(t.getTenantId()));
         } else {
-            sendForTenant(targetTenant, now);
+            sendForTenant(targetTenant);
         }
     }
 
-    private void sendForTenant(String tenantId, LocalDateTime now) {
+    // Incremental jobs carry no since: the sync starts each entity from its persisted watermark
+    private void sendForTenant(String tenantId) {
         SyncJobMessage msg;
         if ("FULL".equalsIgnoreCase(mode)) {
             msg = SyncJobMessage.builder().type("FULL").tenantId(tenantId).build();
         } else {
-            msg = SyncJobMessage.builder().type("INCREMENTAL").tenantId(tenantId).since(now.minusMinutes(intervalMinutes)).build();
+            msg = SyncJobMessage.builder().type("INCREMENTAL").tenantId(tenantId).build();
+        }
+        if (!coalescer.offer(msg)) return; // a job for this tenant is still queued and now covers this one
+        try {
+            rabbitTemplate.convertAndSend(queueName(tenantId), msg);
+        } catch (RuntimeException e) {
+            coalescer.discard(msg);
+            throw e;
         }
-        rabbitTemplate.convertAndSend(queueName(tenantId), msg);
         log.info("Enqueued {} sync job for tenant={} since={}", msg.getType(), tenantId, msg.getSince());
     }
 }
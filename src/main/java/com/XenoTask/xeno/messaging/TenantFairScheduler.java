@@ -0,0 +1,129 @@
+package com.xenotask.xeno.messaging;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * Runs sync jobs (queued messages and fleet runs alike) on at most max-concurrent-jobs virtual threads with one
+ * job per tenant at a time. Unset, the limit is derived from the DB pool like the fleet sync used to be: one
+ * connection stays free for API traffic and each job can hold two (customers and products overlapping, or a
+ * page plus its after-commit rollup refresh).
+ * When a slot frees up, it goes to the waiting tenant with the least weighted run time (run time divided by
+ * the tenant's weight, classic weighted fair queuing). A busy tenant therefore cannot starve the others, and
+ * a tenant that was idle comes back no earlier than the current virtual clock instead of with banked credit.
+ * The wait from submit to start is recorded per tenant as sync.jobs.wait.
+ */
+@Component
+public class TenantFairScheduler {
+    private static final Logger log = LoggerFactory.getLogger(TenantFairScheduler.class);
+
+    private final MeterRegistry meterRegistry;
+    private final int maxConcurrent;
+    private final Map<String, Double> weights = new HashMap<>();
+
+    private final Map<String, TenantState> tenants = new HashMap<>(); // guarded by this
+    private double virtualClock;
+    private int running;
+
+    public TenantFairScheduler(MeterRegistry meterRegistry,
+                               @Value("${spring.datasource.hikari.maximum-pool-size:10}") int dbPoolSize,
+                               @Value("${sync.fair.max-concurrent-jobs:0}") int maxConcurrent,
+                               @Value("${sync.fair.weights:}") String weights) {
+        this.meterRegistry = meterRegistry;
+        this.maxConcurrent = maxConcurrent > 0 ? maxConcurrent : Math.max(1, (dbPoolSize - 1) / 2);
+        for (String entry : weights.split(",")) { // tenantId=weight,...
+            int eq = entry.indexOf('=');
+            if (eq <= 0) continue;
+            try {
+                this.weights.put(entry.substring(0, eq).trim(), Math.max(0.01, Double.parseDouble(entry.substring(eq + 1).trim())));
+            } catch (NumberFormatException e) {
+                log.warn("Ignoring invalid sync.fair.weights entry '{}'", entry);
+            }
+        }
+        meterRegistry.gauge("sync.jobs.waiting", this, TenantFairScheduler::waiting);
+        log.info("Sync job concurrency jobs={}", this.maxConcurrent);
+    }
+
+    /** Queues the job; onDone gets null on success or the failure, on the job's thread. */
+    public synchronized void submit(String tenantId, Runnable job, Consumer<Throwable> onDone) {
+        TenantState state = tenants.computeIfAbsent(tenantId, TenantState::new);
+        if (!state.running && state.queue.isEmpty()) state.vtime = Math.max(state.vtime, virtualClock);
+        state.queue.add(new Pending(job, onDone, System.nanoTime()));
+        dispatch();
+    }
+
+    public synchronized int waiting() {
+        int n = 0;
+        for (TenantState s : tenants.values()) n += s.queue.size();
+        return n;
+    }
+
+    private void dispatch() {
+        while (running < maxConcurrent) {
+            TenantState next = null;
+            for (TenantState s : tenants.values()) {
+                if (s.running || s.queue.isEmpty()) continue;
+                if (next == null || s.vtime < next.vtime
+                        || (s.vtime == next.vtime && s.queue.peek().enqueuedNanos < next.queue.peek().enqueuedNanos)) {
+                    next = s;
+                }
+            }
+            if (next == null) return;
+            start(next, next.queue.poll());
+        }
+    }
+
+    private void start(TenantState state, Pending pending) {
+        state.running = true;
+        running++;
+        virtualClock = Math.max(virtualClock, state.vtime);
+        long waitNanos = System.nanoTime() - pending.enqueuedNanos;
+        waitTimer(state.tenantId).record(Duration.ofNanos(waitNanos));
+        log.debug("Sync job started tenant={} waitMs={} running={}", state.tenantId, waitNanos / 1_000_000L, running);
+        Thread.ofVirtual().name("sync-job-" + state.tenantId).start(() -> {
+            long t0 = System.nanoTime();
+            Throwable failure = null;
+            try {
+                pending.job.run();
+            } catch (Throwable t) {
+                failure = t;
+            } finally {
+                finished(state, System.nanoTime() - t0);
+            }
+            pending.onDone.accept(failure);
+        });
+    }
+
+    private synchronized void finished(TenantState state, long runNanos) {
+        state.running = false;
+        state.vtime += runNanos / 1_000_000_000d / weights.getOrDefault(state.tenantId, 1d);
+        running--;
+        dispatch();
+    }
+
+    private Timer waitTimer(String tenantId) {
+        return Timer.builder("sync.jobs.wait").tag("tenant", tenantId).register(meterRegistry);
+    }
+
+    private record Pending(Runnable job, Consumer<Throwable> onDone, long enqueuedNanos) {}
+
+    private static final class TenantState {
+        final String tenantId;
+        final Deque<Pending> queue = new ArrayDeque<>();
+        double vtime; // weighted seconds of sync run so far
+        boolean running;
+
+        TenantState(String tenantId) { this.tenantId = tenantId; }
+    }
+}
@@ -1,30 +1,54 @@
 package com.xenotask.xeno.messaging;
 
 import com.xenotask.xeno.entity.Tenant;
+import com.xenotask.xeno.service.TenantLifecycleEvent;
 import com.xenotask.xeno.service.TenantService;
 import jakarta.annotation.PostConstruct;
 import lombok.RequiredArgsConstructor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.amqp.AmqpException;
 import org.springframework.amqp.core.AmqpAdmin;
 import org.springframework.amqp.core.Queue;
 import org.springframework.amqp.core.QueueBuilder;
+import org.springframework.amqp.core.QueueInformation;
+import org.springframework.amqp.rabbit.listener.AbstractMessageListenerContainer;
+import org.springframework.amqp.rabbit.listener.MessageListenerContainer;
+import org.springframework.amqp.rabbit.listener.RabbitListenerEndpointRegistry;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
 
+import java.util.Arrays;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.CopyOnWriteArrayList;
 
+/**
+ * Declares the per-tenant sync queues and keeps the SyncJobListener container consuming exactly the queues of
+ * active tenants: queues are added/removed at runtime on tenant lifecycle events, and a periodic reconcile
+ * catches tenants changed on other instances.
+ * <p>Queue arguments cannot change on an existing queue, so the single-active-consumer queues live under a
+ * versioned name ({@link #QUEUE_VERSION}). A tenant's legacy queue (prefix + tenantId) is consumed until it is
+ * empty and then deleted; new jobs only go to the versioned queue.
+ */
 @Component
 @RequiredArgsConstructor
 @ConditionalOnProperty(prefix = "sync.messaging", name = "enabled", havingValue = "true", matchIfMissing = true)
 public class TenantQueueProvider {
     private static final Logger log = LoggerFactory.getLogger(TenantQueueProvider.class);
+    public static final String QUEUE_VERSION = "sac.";
 
     private final TenantService tenantService;
     private final AmqpAdmin amqpAdmin; // Boot auto-configured
+    private final RabbitListenerEndpointRegistry listenerRegistry;
 
     private final List<String> queueNames = new CopyOnWriteArrayList<>();
 
@@ -37,31 +61,145 @@ public class TenantQueueProvider {
     @Value("${sync.rabbit.dlq-routing-key:dlq}")
     private String dlqRoutingKey;
 
+    /** Queues of active tenants at startup; read once by the @RabbitListener expression */
     public String[] getQueueNames() { return queueNames.toArray(new String[0]); }
 
-    private String queueName(String tenantId) { return queuePrefix + tenantId; }
+    public String queueName(String tenantId) { return queuePrefix + QUEUE_VERSION + tenantId; }
+
+    private String legacyQueueName(String tenantId) { return queuePrefix + tenantId; }
 
     @PostConstruct
     public void init() {
         try {
             List<Tenant> tenants = tenantService.listActiveTenants();
-            for (Tenant t : tenants) { ensureQueue(t.getTenantId()); }
+            for (Tenant t : tenants) {
+                try {
+                    ensureQueue(t.getTenantId());
+                } catch (AmqpException e) {
+                    log.warn("Skipping sync queue of tenant={}: {}", t.getTenantId(), e.getMessage());
+                }
+            }
             log.info("TenantQueueProvider initialized with {} queues", queueNames.size());
         } catch (Exception e) {
             log.warn("Skipping initial tenant queue declaration (broker unavailable?): {}", e.getMessage());
         }
     }
 
+    /**
+     * Declares the tenant's queue (once) and makes sure the listener consumes it. Throws when the declaration
+     * fails: a queue without single-active-consumer is never consumed, and callers must not publish to it.
+     */
     public void ensureQueue(String tenantId) {
         String qn = queueName(tenantId);
-        if (queueNames.contains(qn)) return;
-        Map<String, Object> args = Map.of(
-                "x-dead-letter-exchange", dlxExchange,
-                "x-dead-letter-routing-key", dlqRoutingKey
-        );
-        Queue q = QueueBuilder.durable(qn).withArguments(args).build();
-        amqpAdmin.declareQueue(q);
-        queueNames.add(qn);
-        log.info("Declared per-tenant sync queue {}", qn);
+        if (!queueNames.contains(qn)) {
+            Map<String, Object> args = Map.of(
+                    "x-dead-letter-exchange", dlxExchange,
+                    "x-dead-letter-routing-key", dlqRoutingKey,
+                    "x-single-active-consumer", true // one instance works a tenant's queue at a time
+            );
+            Queue q = QueueBuilder.durable(qn).withArguments(args).build();
+            try {
+                amqpAdmin.declareQueue(q);
+            } catch (AmqpException e) {
+                log.error("Could not declare sync queue {}; not consuming it: {}", qn, e.getMessage());
+                throw e;
+            }
+            queueNames.add(qn);
+            log.info("Declared per-tenant sync queue {}", qn);
+        }
+        listen(qn);
+    }
+
+    /**
+     * Consumes the tenant's pre-versioning queue while it holds jobs and deletes it once empty; false when gone.
+     * Runs from reconcile, so a legacy queue is drained at startup and rechecked every reconcile-ms.
+     */
+    private boolean drainLegacy(String tenantId) {
+        String legacy = legacyQueueName(tenantId);
+        try {
+            QueueInformation info = amqpAdmin.getQueueInfo(legacy);
+            if (info == null) return false;
+            if (info.getMessageCount() > 0) {
+                listen(legacy);
+                return true;
+            }
+            stopListening(legacy);
+            amqpAdmin.deleteQueue(legacy, false, true); // only if still empty
+            log.info("Deleted drained legacy sync queue {}", legacy);
+            return false;
+        } catch (AmqpException e) {
+            log.warn("Legacy sync queue {} not drained yet: {}", legacy, e.getMessage());
+            return true;
+        }
+    }
+
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT, fallbackExecution = true)
+    public void onTenantLifecycle(TenantLifecycleEvent event) {
+        switch (event.type()) {
+            case ACTIVATED -> ensureQueue(event.tenantId());
+            case DEACTIVATED -> { // queued jobs wait for reactivation
+                stopListening(queueName(event.tenantId()));
+                stopListening(legacyQueueName(event.tenantId()));
+            }
+            case REMOVED -> {
+                stopListening(queueName(event.tenantId()));
+                stopListening(legacyQueueName(event.tenantId()));
+                queueNames.remove(queueName(event.tenantId()));
+                amqpAdmin.deleteQueue(queueName(event.tenantId()));
+                amqpAdmin.deleteQueue(legacyQueueName(event.tenantId()));
+                log.info("Deleted sync queue of removed tenant {}", event.tenantId());
+            }
+        }
+    }
+
+    /** Queues declared between the listener expression and container start would otherwise be missed. */
+    @EventListener(ApplicationReadyEvent.class)
+    public void onReady() {
+        reconcile();
+    }
+
+    @Scheduled(fixedDelayString = "${sync.messaging.reconcile-ms:60000}", initialDelayString = "${sync.messaging.reconcile-ms:60000}")
+    public void reconcile() {
+        AbstractMessageListenerContainer container = container();
+        if (container == null) return;
+        try {
+            Set<String> wanted = new HashSet<>();
+            for (Tenant t : tenantService.listActiveTenants()) {
+                try {
+                    ensureQueue(t.getTenantId());
+                    wanted.add(queueName(t.getTenantId()));
+                    if (drainLegacy(t.getTenantId())) wanted.add(legacyQueueName(t.getTenantId()));
+                } catch (AmqpException e) {
+                    log.warn("Sync queue reconcile failed tenant={}: {}", t.getTenantId(), e.getMessage());
+                }
+            }
+            for (String qn : container.getQueueNames()) {
+                if (qn.startsWith(queuePrefix) && !wanted.contains(qn)) container.removeQueueNames(qn);
+            }
+        } catch (Exception e) {
+            log.warn("Sync queue reconcile failed: {}", e.getMessage());
+        }
+    }
+
+    private void stopListening(String qn) {
+        AbstractMessageListenerContainer container = container();
+        if (container != null && Arrays.asList(container.getQueueNames()).contains(qn)) {
+            container.removeQueueNames(qn);
+            log.info("Stopped consuming sync queue {}", qn);
+        }
+    }
+
+    private void listen(String qn) {
+        AbstractMessageListenerContainer container = container();
+        if (container == null) return; // not created yet; it starts with getQueueNames()
+        if (!Arrays.asList(container.getQueueNames()).contains(qn)) {
+            container.addQueueNames(qn);
+            log.info("Consuming sync queue {}", qn);
+        }
+    }
+
+    private AbstractMessageListenerContainer container() {
+        MessageListenerContainer c = listenerRegistry.getListenerContainer(SyncJobListener.LISTENER_ID);
+        return c instanceof AbstractMessageListenerContainer amlc ? amlc : null;
     }
 }
@@ -3,9 +3,11 @@ package com.xenotask.xeno.repository;
 import com.xenotask.xeno.entity.Customer;
 import com.xenotask.xeno.entity.Tenant;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -13,9 +15,33 @@ import java.util.Optional;
 public interface CustomerRepository extends JpaRepository<Customer, Integer> {
     Optional<Customer> findByTenantAndShopifyCustomerId(Tenant tenant, Long shopifyCustomerId);
     List<Customer> findByTenantTenantId(String tenantId);
+    List<Customer> findByTenantTenantIdAndShopifyCustomerIdIn(String tenantId, Collection<Long> shopifyCustomerIds);
     Optional<Customer> findByTenantTenantIdAndEmail(String tenantId, String email);
 
+    // shopifyCustomerId -> id pairs; prefills CustomerIdResolver for a page of orders
+    @Query("select c.shopifyCustomerId, c.id from Customer c where c.tenant.tenantId = :tenantId and c.shopifyCustomerId in :shopifyCustomerIds")
+    List<Object[]> findIdsByShopifyCustomerIds(String tenantId, Collection<Long> shopifyCustomerIds);
+
+    // shopifyCustomerId -> payloadHash pairs; unchanged customers of a page are skipped
+    @Query("select c.shopifyCustomerId, c.payloadHash from Customer c where c.tenant.tenantId = :tenantId and c.shopifyCustomerId in :shopifyCustomerIds and c.payloadHash is not null")
+    List<Object[]> findPayloadHashes(String tenantId, Collection<Long> shopifyCustomerIds);
+
     @Query("select c from Customer c where c.tenant.tenantId = :tenantId and c.totalSpent > :minSpent")
     List<Customer> findHighValueCustomers(String tenantId, java.math.BigDecimal minSpent);
+
+    // Recompute totals for just the touched customers; each subquery is an idx_order_customer range scan
+    @Modifying(flushAutomatically = true)
+    @Query(value = "update customers c set " +
+            "c.total_spent = (select coalesce(sum(o.total_price),0) from orders o where o.customer_id = c.id), " +
+            "c.orders_count = (select count(*) from orders o where o.customer_id = c.id), " +
+            "c.first_order_date = (select min(o.created_at) from orders o where o.customer_id = c.id) " +
+            "where c.id in (:customerIds)", nativeQuery = true)
+    int refreshOrderMetrics(Collection<Integer> customerIds);
+
+    // Backfill of first_order_date for customers stored before the column existed
+    @Modifying(flushAutomatically = true)
+    @Query(value = "update customers c set c.first_order_date = (select min(o.created_at) from orders o where o.customer_id = c.id) " +
+            "where c.tenant_id = :tenantId", nativeQuery = true)
+    int refreshFirstOrderDates(String tenantId);
 }
 
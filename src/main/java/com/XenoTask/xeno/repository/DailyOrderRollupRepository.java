@@ -0,0 +1,64 @@
+package com.xenotask.xeno.repository;
+
+import com.xenotask.xeno.entity.DailyOrderRollup;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+
+@Repository
+public interface DailyOrderRollupRepository extends JpaRepository<DailyOrderRollup, Integer> {
+
+    String UPSERT_SUFFIX = " on duplicate key update revenue = values(revenue), orders = values(orders), discounts = values(discounts), " +
+            "cancellations = values(cancellations), units = values(units), item_orders = values(item_orders), customers = values(customers), updated_at = values(updated_at)";
+
+    // Recomputes the given days from raw rows; the created_at range keeps it on idx_order_date. Runs after the
+    // order write committed, at READ COMMITTED, so it neither gap-locks the rollup day nor share-locks the orders.
+    @Modifying(flushAutomatically = true)
+    @Query(value = "insert into daily_order_rollups (tenant_id, day, revenue, orders, discounts, cancellations, units, item_orders, customers, updated_at) " +
+            "select o.tenant_id, date(o.created_at), coalesce(sum(o.total_price),0), count(*), coalesce(sum(o.total_discounts),0), " +
+            "sum(case when o.cancelled_at is not null then 1 else 0 end), coalesce(sum(li.units),0), count(li.order_id), count(distinct o.customer_id), now() " +
+            "from orders o left join (select li.order_id, sum(li.quantity) units from order_line_items li join orders o2 on o2.id = li.order_id " +
+            "where o2.tenant_id = :tenantId and o2.created_at >= :from and o2.created_at < :to group by li.order_id) li on li.order_id = o.id " +
+            "where o.tenant_id = :tenantId and o.created_at >= :from and o.created_at < :to and date(o.created_at) in (:days) " +
+            "group by o.tenant_id, date(o.created_at)" + UPSERT_SUFFIX, nativeQuery = true)
+    int upsertDays(@Param("tenantId") String tenantId, @Param("from") LocalDateTime from, @Param("to") LocalDateTime to,
+                   @Param("days") Collection<LocalDate> days);
+
+    // Days among the given ones whose last order went away (deleted, or moved by a created_at correction)
+    @Modifying(flushAutomatically = true)
+    @Query(value = "delete r from daily_order_rollups r where r.tenant_id = :tenantId and r.day in (:days) and not exists " +
+            "(select 1 from orders o where o.tenant_id = r.tenant_id and o.created_at >= r.day and o.created_at < r.day + interval 1 day)",
+            nativeQuery = true)
+    int deleteEmptyDays(@Param("tenantId") String tenantId, @Param("days") Collection<LocalDate> days);
+
+    @Modifying(flushAutomatically = true)
+    @Query(value = "delete r from daily_order_rollups r where r.tenant_id = :tenantId and not exists " +
+            "(select 1 from orders o where o.tenant_id = r.tenant_id and o.created_at >= r.day and o.created_at < r.day + interval 1 day)",
+            nativeQuery = true)
+    int deleteEmptyDaysForTenant(@Param("tenantId") String tenantId);
+
+    // Whole-tenant rebuild (backfill)
+    @Modifying(flushAutomatically = true)
+    @Query(value = "insert into daily_order_rollups (tenant_id, day, revenue, orders, discounts, cancellations, units, item_orders, customers, updated_at) " +
+            "select o.tenant_id, date(o.created_at), coalesce(sum(o.total_price),0), count(*), coalesce(sum(o.total_discounts),0), " +
+            "sum(case when o.cancelled_at is not null then 1 else 0 end), coalesce(sum(li.units),0), count(li.order_id), count(distinct o.customer_id), now() " +
+            "from orders o left join (select order_id, sum(quantity) units from order_line_items where tenant_id = :tenantId group by order_id) li on li.order_id = o.id " +
+            "where o.tenant_id = :tenantId and o.created_at is not null group by o.tenant_id, date(o.created_at)" + UPSERT_SUFFIX, nativeQuery = true)
+    int upsertAllForTenant(@Param("tenantId") String tenantId);
+
+    // revenue, orders, discounts, cancellations, units, item_orders over whole days [fromDay, toDay]
+    @Query("select coalesce(sum(r.revenue),0), coalesce(sum(r.orders),0), coalesce(sum(r.discounts),0), coalesce(sum(r.cancellations),0), " +
+            "coalesce(sum(r.units),0), coalesce(sum(r.itemOrders),0) from DailyOrderRollup r " +
+            "where r.tenant.tenantId = :tenantId and r.day between :fromDay and :toDay")
+    List<Object[]> totals(@Param("tenantId") String tenantId, @Param("fromDay") LocalDate fromDay, @Param("toDay") LocalDate toDay);
+
+    @Query("select r.day, r.revenue from DailyOrderRollup r where r.tenant.tenantId = :tenantId and r.day between :fromDay and :toDay order by r.day")
+    List<Object[]> dailyRevenue(@Param("tenantId") String tenantId, @Param("fromDay") LocalDate fromDay, @Param("toDay") LocalDate toDay);
+}
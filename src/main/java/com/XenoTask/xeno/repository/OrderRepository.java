@@ -1,8 +1,12 @@
 package com.xenotask.xeno.repository;
 
 import com.xenotask.xeno.entity.Order;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.stereotype.Repository;
 import org.springframework.data.repository.query.Param;
 
@@ -14,9 +18,26 @@ import java.util.Optional;
 public interface OrderRepository extends JpaRepository<Order, Integer> {
     Optional<Order> findByTenantTenantIdAndShopifyOrderId(String tenantId, Long shopifyOrderId);
     List<Order> findByTenantTenantId(String tenantId);
+    List<Order> findByTenantTenantIdAndShopifyOrderIdIn(String tenantId, java.util.Collection<Long> shopifyOrderIds);
     List<Order> findByTenantTenantIdAndFinancialStatus(String tenantId, String financialStatus);
     List<Order> findByTenantTenantIdAndCreatedAtBetween(String tenantId, LocalDateTime start, LocalDateTime end);
 
+    // Customers currently attached to a page of orders (before the page is written)
+    @Query("select distinct o.customer.id from Order o where o.tenant.tenantId = :tenantId and o.shopifyOrderId in :shopifyOrderIds and o.customer is not null")
+    List<Integer> findCustomerIdsByShopifyOrderIds(@Param("tenantId") String tenantId, @Param("shopifyOrderIds") java.util.Collection<Long> shopifyOrderIds);
+
+    // id and created_at of the orders of customers about to be deleted
+    @Query("select o.id, o.createdAt from Order o where o.tenant.tenantId = :tenantId and o.customer.id in :customerIds")
+    List<Object[]> findIdsAndCreatedAtByCustomerIds(@Param("tenantId") String tenantId, @Param("customerIds") java.util.Collection<Integer> customerIds);
+
+    @Modifying(flushAutomatically = true)
+    @Query(value = "update orders set customer_id = null where tenant_id = :tenantId and customer_id in (:customerIds)", nativeQuery = true)
+    int detachCustomers(@Param("tenantId") String tenantId, @Param("customerIds") java.util.Collection<Integer> customerIds);
+
+    // shopifyOrderId -> payloadHash pairs; unchanged orders of a page are skipped
+    @Query("select o.shopifyOrderId, o.payloadHash from Order o where o.tenant.tenantId = :tenantId and o.shopifyOrderId in :shopifyOrderIds and o.payloadHash is not null")
+    List<Object[]> findPayloadHashes(@Param("tenantId") String tenantId, @Param("shopifyOrderIds") java.util.Collection<Long> shopifyOrderIds);
+
     @Query("select o from Order o where o.tenant.tenantId = :tenantId and o.totalPrice > :minTotal")
     List<Order> findHighValueOrders(String tenantId, java.math.BigDecimal minTotal);
 
@@ -36,14 +57,43 @@ public interface OrderRepository extends JpaRepository<Order, Integer> {
     @Query("select coalesce(sum(o.totalPrice),0), count(o), coalesce(sum(o.totalDiscounts),0) from Order o where o.tenant.tenantId=:tenantId and o.createdAt between :start and :end")
     java.util.List<Object[]> aovStats(@Param("tenantId") String tenantId, @Param("start") java.time.LocalDateTime start, @Param("end") java.time.LocalDateTime end);
 
-    // Added for AnalyticsService.cancellationRate
-    @Query("select count(o) from Order o where o.tenant.tenantId=:tenantId and o.createdAt between :start and :end")
-    long countOrdersInRange(@Param("tenantId") String tenantId, @Param("start") java.time.LocalDateTime start, @Param("end") java.time.LocalDateTime end);
+    // Total and cancelled in one pass, for AnalyticsService.cancellationRate
+    @Query("select count(o), coalesce(sum(case when o.cancelledAt is not null then 1 else 0 end),0) from Order o where o.tenant.tenantId=:tenantId and o.createdAt between :start and :end")
+    java.util.List<Object[]> countOrdersAndCancelledInRange(@Param("tenantId") String tenantId, @Param("start") java.time.LocalDateTime start, @Param("end") java.time.LocalDateTime end);
+
+    // AnalyticsService.kpis: every orders KPI of the range in one scan of idx_order_date, plus the new-customer count
+    @Query(value = "select coalesce(sum(o.total_price),0), count(*), coalesce(sum(o.total_discounts),0), " +
+            "coalesce(sum(case when o.cancelled_at is not null then 1 else 0 end),0), count(distinct o.customer_id), " +
+            "(select count(*) from customers c where c.tenant_id = :tenantId and c.first_order_date between :start and :end) " +
+            "from orders o where o.tenant_id = :tenantId and o.created_at between :start and :end", nativeQuery = true)
+    java.util.List<Object[]> rangeKpis(@Param("tenantId") String tenantId, @Param("start") java.time.LocalDateTime start, @Param("end") java.time.LocalDateTime end);
+
+    // Same columns as rangeKpis while first_order_date is not backfilled: new = customers with exactly one order in the range
+    @Query(value = "select coalesce(sum(t.revenue),0), coalesce(sum(t.cnt),0), coalesce(sum(t.discounts),0), coalesce(sum(t.cancelled),0), " +
+            "count(t.customer_id), coalesce(sum(case when t.customer_id is not null and t.cnt = 1 then 1 else 0 end),0) " +
+            "from (select o.customer_id, sum(o.total_price) revenue, count(*) cnt, sum(o.total_discounts) discounts, " +
+            "sum(case when o.cancelled_at is not null then 1 else 0 end) cancelled " +
+            "from orders o where o.tenant_id = :tenantId and o.created_at between :start and :end group by o.customer_id) t", nativeQuery = true)
+    java.util.List<Object[]> rangeKpisByOrderCount(@Param("tenantId") String tenantId, @Param("start") java.time.LocalDateTime start, @Param("end") java.time.LocalDateTime end);
+
+    // New = first-ever order falls in the range (idx_customer_first_order); returning = the other customers who ordered in it
+    @Query(value = "select n.cnt, greatest(a.cnt - n.cnt, 0) from " +
+            "(select count(*) cnt from customers c where c.tenant_id = :tenantId and c.first_order_date between :start and :end) n, " +
+            "(select count(distinct o.customer_id) cnt from orders o where o.tenant_id = :tenantId and o.created_at between :start and :end) a",
+            nativeQuery = true)
+    java.util.List<Object[]> newVsReturningInRange(@Param("tenantId") String tenantId, @Param("start") java.time.LocalDateTime start, @Param("end") java.time.LocalDateTime end);
+
+    // Fallback until first_order_date is backfilled: new = exactly one order in the range, returning = more than one
+    @Query(value = "select coalesce(sum(case when t.cnt = 1 then 1 else 0 end),0), coalesce(sum(case when t.cnt > 1 then 1 else 0 end),0) " +
+            "from (select count(*) cnt from orders o where o.tenant_id = :tenantId and o.created_at between :start and :end " +
+            "and o.customer_id is not null group by o.customer_id) t", nativeQuery = true)
+    java.util.List<Object[]> newVsReturningByOrderCount(@Param("tenantId") String tenantId, @Param("start") java.time.LocalDateTime start, @Param("end") java.time.LocalDateTime end);
 
-    @Query("select count(o) from Order o where o.tenant.tenantId=:tenantId and o.createdAt between :start and :end and o.cancelledAt is not null")
-    long countCancelledInRange(@Param("tenantId") String tenantId, @Param("start") java.time.LocalDateTime start, @Param("end") java.time.LocalDateTime end);
+    // OrderColumnStore: id, createdAt, totalPrice, customer id, financialStatus; oldest first, streamed row by row
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "-2147483648"))
+    @Query("select o.id, o.createdAt, o.totalPrice, c.id, o.financialStatus from Order o left join o.customer c where o.tenant.tenantId=:tenantId order by o.createdAt, o.id")
+    java.util.stream.Stream<Object[]> streamColumnarRows(@Param("tenantId") String tenantId);
 
-    // Added for AnalyticsService.newVsReturning
-    @Query("select o.customer.id, count(o) from Order o where o.tenant.tenantId=:tenantId and o.createdAt between :start and :end and o.customer is not null group by o.customer.id")
-    java.util.List<Object[]> ordersPerCustomerInRange(@Param("tenantId") String tenantId, @Param("start") java.time.LocalDateTime start, @Param("end") java.time.LocalDateTime end);
+    @Query("select o.id, o.createdAt, o.totalPrice, c.id, o.financialStatus from Order o left join o.customer c where o.tenant.tenantId=:tenantId and o.id in :ids")
+    java.util.List<Object[]> findColumnarRows(@Param("tenantId") String tenantId, @Param("ids") java.util.Collection<Integer> ids);
 }
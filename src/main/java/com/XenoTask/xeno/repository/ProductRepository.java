@@ -2,8 +2,11 @@ package com.xenotask.xeno.repository;
 
 import com.xenotask.xeno.entity.Product;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -12,5 +15,18 @@ public interface ProductRepository extends JpaRepository<Product, Integer> {
     Optional<Product> findByTenantTenantIdAndShopifyProductId(String tenantId, Long shopifyProductId);
     List<Product> findByTenantTenantId(String tenantId);
     List<Product> findByTenantTenantIdAndStatus(String tenantId, String status);
+
+    // shopifyProductId -> id pairs for resolving a whole page of line items at once
+    @Query("select p.shopifyProductId, p.id from Product p where p.tenant.tenantId = :tenantId and p.shopifyProductId in :shopifyProductIds")
+    List<Object[]> findIdsByShopifyProductIds(String tenantId, Collection<Long> shopifyProductIds);
+
+    // shopifyProductId -> payloadHash pairs; unchanged products of a page are skipped
+    @Query("select p.shopifyProductId, p.payloadHash from Product p where p.tenant.tenantId = :tenantId and p.shopifyProductId in :shopifyProductIds and p.payloadHash is not null")
+    List<Object[]> findPayloadHashes(String tenantId, Collection<Long> shopifyProductIds);
+
+    // Deleted in Shopify: kept for the line items that still point at it, hidden by status
+    @Modifying(flushAutomatically = true)
+    @Query("update Product p set p.status = 'deleted', p.payloadHash = null where p.tenant.tenantId = :tenantId and p.shopifyProductId in :shopifyProductIds")
+    int markDeleted(String tenantId, Collection<Long> shopifyProductIds);
 }
 
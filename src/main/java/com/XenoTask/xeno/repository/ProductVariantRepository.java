@@ -7,6 +7,7 @@ import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -17,6 +18,10 @@ public interface ProductVariantRepository extends JpaRepository<ProductVariant,
     List<ProductVariant> findByTenantTenantId(String tenantId);
     List<ProductVariant> findByTenantTenantIdAndSku(String tenantId, String sku);
 
+    // shopifyVariantId -> id pairs for resolving a whole page of line items at once
+    @Query("select pv.shopifyVariantId, pv.id from ProductVariant pv where pv.tenant.tenantId = :tenantId and pv.shopifyVariantId in :shopifyVariantIds")
+    List<Object[]> findIdsByShopifyVariantIds(String tenantId, Collection<Long> shopifyVariantIds);
+
     @Query("select pv.product.id as productId, pv.product.title as title, sum(coalesce(pv.inventoryQuantity,0)) as qty " +
            "from ProductVariant pv " +
            "where pv.tenant.tenantId = :tenantId " +
@@ -0,0 +1,14 @@
+package com.xenotask.xeno.repository;
+
+import com.xenotask.xeno.entity.SyncCheckpoint;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+import java.util.Optional;
+
+@Repository
+public interface SyncCheckpointRepository extends JpaRepository<SyncCheckpoint, Integer> {
+    Optional<SyncCheckpoint> findFirstByTenantTenantIdAndEndpointAndScopeAndCompletedFalseOrderByIdDesc(String tenantId, String endpoint, String scope);
+    List<SyncCheckpoint> findBySyncLogId(Integer syncLogId);
+}
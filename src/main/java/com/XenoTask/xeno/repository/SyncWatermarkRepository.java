@@ -0,0 +1,24 @@
+package com.xenotask.xeno.repository;
+
+import com.xenotask.xeno.entity.SyncWatermark;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.Optional;
+
+@Repository
+public interface SyncWatermarkRepository extends JpaRepository<SyncWatermark, Integer> {
+    Optional<SyncWatermark> findByTenantTenantIdAndEntity(String tenantId, String entity);
+
+    // Single-statement insert-or-advance; GREATEST keeps concurrent or out-of-order syncs from moving it back
+    @Modifying
+    @Query(value = "insert into sync_watermarks (tenant_id, entity, high_water, updated_at) values (:tenantId, :entity, :highWater, :now) " +
+            "on duplicate key update high_water = greatest(coalesce(high_water, values(high_water)), values(high_water)), updated_at = values(updated_at)",
+            nativeQuery = true)
+    int advance(@Param("tenantId") String tenantId, @Param("entity") String entity,
+                @Param("highWater") LocalDateTime highWater, @Param("now") LocalDateTime now);
+}
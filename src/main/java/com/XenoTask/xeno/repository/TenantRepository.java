@@ -2,8 +2,12 @@ package com.xenotask.xeno.repository;
 
 import com.xenotask.xeno.entity.Tenant;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.time.LocalDateTime;
 import java.util.List;
 import java.util.Optional;
 
@@ -12,4 +16,25 @@ public interface TenantRepository extends JpaRepository<Tenant, String> {
     Optional<Tenant> findByShopDomain(String shopDomain);
     boolean existsByShopDomain(String shopDomain);
     List<Tenant> findAllByIsActiveTrue();
+
+    @Query("select t.rollupsBuiltAt from Tenant t where t.tenantId = :tenantId")
+    Optional<LocalDateTime> findRollupsBuiltAt(@Param("tenantId") String tenantId);
+
+    @Query("select t.tenantId from Tenant t where t.rollupsBuiltAt is null")
+    List<String> findTenantIdsWithoutRollups();
+
+    // null = analytics must not trust daily_order_rollups for the tenant
+    @Modifying
+    @Query("update Tenant t set t.rollupsBuiltAt = :at where t.tenantId = :tenantId")
+    int setRollupsBuiltAt(@Param("tenantId") String tenantId, @Param("at") LocalDateTime at);
+
+    @Query("select t.firstOrderDatesBuiltAt from Tenant t where t.tenantId = :tenantId")
+    Optional<LocalDateTime> findFirstOrderDatesBuiltAt(@Param("tenantId") String tenantId);
+
+    @Query("select t.tenantId from Tenant t where t.firstOrderDatesBuiltAt is null")
+    List<String> findTenantIdsWithoutFirstOrderDates();
+
+    @Modifying
+    @Query("update Tenant t set t.firstOrderDatesBuiltAt = :at where t.tenantId = :tenantId")
+    int setFirstOrderDatesBuiltAt(@Param("tenantId") String tenantId, @Param("at") LocalDateTime at);
 }
@@ -0,0 +1,79 @@
+package com.xenotask.xeno.repository.jdbc;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.ResultSetExtractor;
+import org.springframework.stereotype.Repository;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDateTime;
+
+/**
+ * Forward-only reads for exports. Connector/J buffers a whole result set unless the statement is forward-only,
+ * read-only and has fetch size Integer.MIN_VALUE; then rows are streamed off the socket one at a time and the
+ * extractor sees them without any entity hydration. The connection stays busy until the extractor returns.
+ * The server blocks on its socket while the client is slow, so the session's net_write_timeout is raised for
+ * the export and restored before the connection goes back to the pool.
+ */
+@Repository
+public class ExportJdbcRepository {
+
+    private static final String ORDERS_SQL =
+            "select o.shopify_order_id, o.order_number, c.shopify_customer_id, o.email, o.financial_status, " +
+            "o.fulfillment_status, o.currency, o.total_price, o.subtotal_price, o.total_tax, o.total_discounts, " +
+            "o.total_shipping, o.created_at, o.updated_at, o.cancelled_at, o.cancel_reason, o.tags " +
+            "from orders o left join customers c on c.id = o.customer_id " +
+            "where o.tenant_id = ? and o.created_at between ? and ? order by o.created_at, o.id";
+
+    private static final String LINE_ITEMS_SQL =
+            "select o.shopify_order_id, o.order_number, o.created_at as order_created_at, li.shopify_line_item_id, " +
+            "p.shopify_product_id, v.shopify_variant_id, li.title, li.sku, li.vendor, li.quantity, li.price, li.total_discount " +
+            "from orders o join order_line_items li on li.order_id = o.id " +
+            "left join products p on p.id = li.product_id left join product_variants v on v.id = li.variant_id " +
+            "where o.tenant_id = ? and o.created_at between ? and ? order by o.created_at, o.id, li.id";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final int netWriteTimeoutSeconds;
+
+    public ExportJdbcRepository(JdbcTemplate jdbcTemplate,
+                                @Value("${export.net-write-timeout-seconds:600}") int netWriteTimeoutSeconds) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.netWriteTimeoutSeconds = netWriteTimeoutSeconds;
+    }
+
+    /** Orders created in [start, end], oldest first (idx_order_date) */
+    public <T> T streamOrders(String tenantId, LocalDateTime start, LocalDateTime end, ResultSetExtractor<T> extractor) {
+        return stream(ORDERS_SQL, extractor, tenantId, start, end);
+    }
+
+    /** Line items of the orders created in [start, end], in order of their order */
+    public <T> T streamLineItems(String tenantId, LocalDateTime start, LocalDateTime end, ResultSetExtractor<T> extractor) {
+        return stream(LINE_ITEMS_SQL, extractor, tenantId, start, end);
+    }
+
+    private <T> T stream(String sql, ResultSetExtractor<T> extractor, Object... args) {
+        return jdbcTemplate.execute((ConnectionCallback<T>) con -> {
+            setSession(con, "set session net_write_timeout = " + netWriteTimeoutSeconds);
+            try (PreparedStatement ps = con.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+                ps.setFetchSize(Integer.MIN_VALUE);
+                for (int i = 0; i < args.length; i++) ps.setObject(i + 1, args[i]);
+                try (ResultSet rs = ps.executeQuery()) {
+                    return extractor.extractData(rs);
+                }
+            } finally {
+                setSession(con, "set session net_write_timeout = default"); // the streamed result set is closed by now
+            }
+        });
+    }
+
+    private static void setSession(Connection con, String sql) throws SQLException {
+        try (Statement st = con.createStatement()) {
+            st.execute(sql);
+        }
+    }
+}
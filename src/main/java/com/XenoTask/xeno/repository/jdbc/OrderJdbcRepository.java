@@ -0,0 +1,199 @@
+package com.xenotask.xeno.repository.jdbc;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.math.BigDecimal;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Page-level JDBC writer for orders and their line items. Rows are sent as one batch per statement
+ * (rewriteBatchedStatements on the MySQL URL turns them into multi-row inserts).
+ */
+@Repository
+public class OrderJdbcRepository {
+
+    private static final String UPSERT_ORDER_SQL =
+            "insert into orders (tenant_id, customer_id, shopify_order_id, order_number, email, financial_status, " +
+            "fulfillment_status, total_price, subtotal_price, total_tax, total_discounts, total_shipping, currency, " +
+            "confirmed, created_at, updated_at, cancelled_at, cancel_reason, tags, note, payload_hash) " +
+            "values (?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?) " +
+            "on duplicate key update customer_id=values(customer_id), order_number=values(order_number), " +
+            "email=values(email), financial_status=values(financial_status), fulfillment_status=values(fulfillment_status), " +
+            "total_price=values(total_price), subtotal_price=values(subtotal_price), total_tax=values(total_tax), " +
+            "total_discounts=values(total_discounts), total_shipping=values(total_shipping), currency=values(currency), " +
+            "confirmed=values(confirmed), created_at=values(created_at), updated_at=values(updated_at), " +
+            "cancelled_at=values(cancelled_at), cancel_reason=values(cancel_reason), tags=values(tags), note=values(note), " +
+            "payload_hash=values(payload_hash)";
+
+    private static final String INSERT_LINE_ITEM_SQL =
+            "insert into order_line_items (tenant_id, order_id, product_id, variant_id, shopify_line_item_id, title, " +
+            "quantity, price, total_discount, sku, vendor) values (?,?,?,?,?,?,?,?,?,?,?)";
+
+    private static final String UPDATE_LINE_ITEM_SQL =
+            "update order_line_items set product_id=?, variant_id=?, title=?, quantity=?, price=?, total_discount=?, " +
+            "sku=?, vendor=? where id=?";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final NamedParameterJdbcTemplate namedJdbcTemplate;
+
+    public OrderJdbcRepository(JdbcTemplate jdbcTemplate, NamedParameterJdbcTemplate namedJdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.namedJdbcTemplate = namedJdbcTemplate;
+    }
+
+    /** Insert-or-update all orders of a page keyed on unique_order_per_tenant. Returns the number of rows sent. */
+    public int upsertOrders(List<OrderRow> rows) {
+        if (rows.isEmpty()) return 0;
+        jdbcTemplate.batchUpdate(UPSERT_ORDER_SQL, rows, rows.size(), (ps, r) -> {
+            ps.setString(1, r.tenantId());
+            setInt(ps, 2, r.customerId());
+            ps.setLong(3, r.shopifyOrderId());
+            ps.setString(4, r.orderNumber());
+            ps.setString(5, r.email());
+            ps.setString(6, r.financialStatus());
+            ps.setString(7, r.fulfillmentStatus());
+            ps.setBigDecimal(8, r.totalPrice());
+            ps.setBigDecimal(9, r.subtotalPrice());
+            ps.setBigDecimal(10, r.totalTax());
+            ps.setBigDecimal(11, r.totalDiscounts());
+            ps.setBigDecimal(12, r.totalShipping());
+            ps.setString(13, r.currency());
+            ps.setBoolean(14, r.confirmed());
+            ps.setObject(15, r.createdAt());
+            ps.setObject(16, r.updatedAt());
+            ps.setObject(17, r.cancelledAt());
+            ps.setString(18, r.cancelReason());
+            ps.setString(19, r.tags());
+            ps.setString(20, r.note());
+            if (r.payloadHash() == null) ps.setNull(21, Types.BIGINT); else ps.setLong(21, r.payloadHash());
+        });
+        return rows.size();
+    }
+
+    /** shopify_order_id -> orders.id for the given page */
+    public Map<Long, Integer> findOrderIds(String tenantId, Collection<Long> shopifyOrderIds) {
+        Map<Long, Integer> ids = new HashMap<>();
+        if (shopifyOrderIds.isEmpty()) return ids;
+        MapSqlParameterSource params = new MapSqlParameterSource()
+                .addValue("tenantId", tenantId)
+                .addValue("ids", shopifyOrderIds);
+        namedJdbcTemplate.query("select shopify_order_id, id from orders where tenant_id = :tenantId and shopify_order_id in (:ids)",
+                params, rs -> { ids.put(rs.getLong(1), rs.getInt(2)); });
+        return ids;
+    }
+
+    /** Current line items of the given orders */
+    public List<StoredLineItem> findLineItems(Collection<Integer> orderIds) {
+        if (orderIds.isEmpty()) return List.of();
+        return namedJdbcTemplate.query("select id, tenant_id, order_id, product_id, variant_id, shopify_line_item_id, title, " +
+                        "quantity, price, total_discount, sku, vendor from order_line_items where order_id in (:ids)",
+                new MapSqlParameterSource("ids", orderIds),
+                (rs, i) -> new StoredLineItem(rs.getInt("id"), new LineItemRow(
+                        rs.getString("tenant_id"),
+                        rs.getInt("order_id"),
+                        rs.getObject("product_id", Integer.class),
+                        rs.getObject("variant_id", Integer.class),
+                        rs.getObject("shopify_line_item_id", Long.class) == null ? 0L : rs.getLong("shopify_line_item_id"),
+                        rs.getString("title"),
+                        rs.getInt("quantity"),
+                        rs.getBigDecimal("price"),
+                        rs.getBigDecimal("total_discount"),
+                        rs.getString("sku"),
+                        rs.getString("vendor"))));
+    }
+
+    public int deleteLineItems(Collection<Integer> lineItemIds) {
+        if (lineItemIds.isEmpty()) return 0;
+        return namedJdbcTemplate.update("delete from order_line_items where id in (:ids)",
+                new MapSqlParameterSource("ids", lineItemIds));
+    }
+
+    /** Rewrites the mutable columns of existing line items, one batch for all of them */
+    public int updateLineItems(List<StoredLineItem> rows) {
+        if (rows.isEmpty()) return 0;
+        jdbcTemplate.batchUpdate(UPDATE_LINE_ITEM_SQL, rows, rows.size(), (ps, s) -> {
+            LineItemRow r = s.row();
+            setInt(ps, 1, r.productId());
+            setInt(ps, 2, r.variantId());
+            ps.setString(3, r.title());
+            ps.setInt(4, r.quantity());
+            ps.setBigDecimal(5, r.price());
+            ps.setBigDecimal(6, r.totalDiscount());
+            ps.setString(7, r.sku());
+            ps.setString(8, r.vendor());
+            ps.setInt(9, s.id());
+        });
+        return rows.size();
+    }
+
+    public int insertLineItems(List<LineItemRow> rows) {
+        if (rows.isEmpty()) return 0;
+        jdbcTemplate.batchUpdate(INSERT_LINE_ITEM_SQL, rows, rows.size(), (ps, r) -> {
+            ps.setString(1, r.tenantId());
+            ps.setInt(2, r.orderId());
+            setInt(ps, 3, r.productId());
+            setInt(ps, 4, r.variantId());
+            ps.setLong(5, r.shopifyLineItemId());
+            ps.setString(6, r.title());
+            ps.setInt(7, r.quantity());
+            ps.setBigDecimal(8, r.price());
+            ps.setBigDecimal(9, r.totalDiscount());
+            ps.setString(10, r.sku());
+            ps.setString(11, r.vendor());
+        });
+        return rows.size();
+    }
+
+    private static void setInt(PreparedStatement ps, int idx, Integer v) throws SQLException {
+        if (v == null) ps.setNull(idx, Types.INTEGER); else ps.setInt(idx, v);
+    }
+
+    /** Flat column values of one orders row */
+    public record OrderRow(String tenantId,
+                           Integer customerId,
+                           long shopifyOrderId,
+                           String orderNumber,
+                           String email,
+                           String financialStatus,
+                           String fulfillmentStatus,
+                           BigDecimal totalPrice,
+                           BigDecimal subtotalPrice,
+                           BigDecimal totalTax,
+                           BigDecimal totalDiscounts,
+                           BigDecimal totalShipping,
+                           String currency,
+                           boolean confirmed,
+                           LocalDateTime createdAt,
+                           LocalDateTime updatedAt,
+                           LocalDateTime cancelledAt,
+                           String cancelReason,
+                           String tags,
+                           String note,
+                           Long payloadHash) {}
+
+    /** Flat column values of one order_line_items row */
+    public record LineItemRow(String tenantId,
+                              int orderId,
+                              Integer productId,
+                              Integer variantId,
+                              long shopifyLineItemId,
+                              String title,
+                              int quantity,
+                              BigDecimal price,
+                              BigDecimal totalDiscount,
+                              String sku,
+                              String vendor) {}
+
+    /** A line item row as stored, with its primary key */
+    public record StoredLineItem(int id, LineItemRow row) {}
+}
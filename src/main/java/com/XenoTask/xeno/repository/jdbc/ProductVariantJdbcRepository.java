@@ -0,0 +1,108 @@
+package com.xenotask.xeno.repository.jdbc;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Page-level JDBC access to product variants: one IN query for the variants of a page's products and one
+ * insert-or-update batch (keyed on unique_variant_per_tenant) for the ones that changed.
+ */
+@Repository
+public class ProductVariantJdbcRepository {
+
+    private static final String UPSERT_VARIANT_SQL =
+            "insert into product_variants (tenant_id, product_id, shopify_variant_id, title, price, compare_at_price, sku, " +
+            "inventory_quantity, weight, requires_shipping, taxable, created_at, updated_at) " +
+            "values (?,?,?,?,?,?,?,?,?,?,?,?,?) " +
+            "on duplicate key update product_id=values(product_id), title=values(title), price=values(price), " +
+            "compare_at_price=values(compare_at_price), sku=values(sku), inventory_quantity=values(inventory_quantity), " +
+            "weight=values(weight), requires_shipping=values(requires_shipping), taxable=values(taxable), " +
+            "created_at=values(created_at), updated_at=values(updated_at)";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final NamedParameterJdbcTemplate namedJdbcTemplate;
+
+    public ProductVariantJdbcRepository(JdbcTemplate jdbcTemplate, NamedParameterJdbcTemplate namedJdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.namedJdbcTemplate = namedJdbcTemplate;
+    }
+
+    /** shopify_variant_id -> stored row for every variant of the given products */
+    public Map<Long, VariantRow> findByProductIds(String tenantId, Collection<Integer> productIds) {
+        Map<Long, VariantRow> rows = new HashMap<>();
+        if (productIds.isEmpty()) return rows;
+        MapSqlParameterSource params = new MapSqlParameterSource()
+                .addValue("tenantId", tenantId)
+                .addValue("ids", productIds);
+        namedJdbcTemplate.query("select tenant_id, product_id, shopify_variant_id, title, price, compare_at_price, sku, " +
+                        "inventory_quantity, weight, requires_shipping, taxable, created_at, updated_at " +
+                        "from product_variants where tenant_id = :tenantId and product_id in (:ids)",
+                params, rs -> {
+                    VariantRow r = new VariantRow(
+                            rs.getString("tenant_id"),
+                            rs.getInt("product_id"),
+                            rs.getLong("shopify_variant_id"),
+                            rs.getString("title"),
+                            rs.getBigDecimal("price"),
+                            rs.getBigDecimal("compare_at_price"),
+                            rs.getString("sku"),
+                            rs.getObject("inventory_quantity", Integer.class),
+                            rs.getBigDecimal("weight"),
+                            rs.getObject("requires_shipping", Boolean.class),
+                            rs.getObject("taxable", Boolean.class),
+                            toLocal(rs.getTimestamp("created_at")),
+                            toLocal(rs.getTimestamp("updated_at")));
+                    rows.put(r.shopifyVariantId(), r);
+                });
+        return rows;
+    }
+
+    /** Insert-or-update of the given variants as one batch. Returns the number of rows sent. */
+    public int upsertVariants(List<VariantRow> rows) {
+        if (rows.isEmpty()) return 0;
+        jdbcTemplate.batchUpdate(UPSERT_VARIANT_SQL, rows, rows.size(), (ps, r) -> {
+            ps.setString(1, r.tenantId());
+            ps.setInt(2, r.productId());
+            ps.setLong(3, r.shopifyVariantId());
+            ps.setString(4, r.title());
+            ps.setBigDecimal(5, r.price());
+            ps.setBigDecimal(6, r.compareAtPrice());
+            ps.setString(7, r.sku());
+            if (r.inventoryQuantity() == null) ps.setNull(8, Types.INTEGER); else ps.setInt(8, r.inventoryQuantity());
+            ps.setBigDecimal(9, r.weight());
+            if (r.requiresShipping() == null) ps.setNull(10, Types.BOOLEAN); else ps.setBoolean(10, r.requiresShipping());
+            if (r.taxable() == null) ps.setNull(11, Types.BOOLEAN); else ps.setBoolean(11, r.taxable());
+            ps.setObject(12, r.createdAt());
+            ps.setObject(13, r.updatedAt());
+        });
+        return rows.size();
+    }
+
+    private static LocalDateTime toLocal(Timestamp ts) { return ts == null ? null : ts.toLocalDateTime(); }
+
+    /** Flat column values of one product_variants row */
+    public record VariantRow(String tenantId,
+                             int productId,
+                             long shopifyVariantId,
+                             String title,
+                             BigDecimal price,
+                             BigDecimal compareAtPrice,
+                             String sku,
+                             Integer inventoryQuantity,
+                             BigDecimal weight,
+                             Boolean requiresShipping,
+                             Boolean taxable,
+                             LocalDateTime createdAt,
+                             LocalDateTime updatedAt) {}
+}
@@ -1,5 +1,7 @@
 package com.xenotask.xeno.service;
 
+import com.xenotask.xeno.entity.Customer;
+import com.xenotask.xeno.repository.CustomerRepository;
 import com.xenotask.xeno.repository.OrderLineItemRepository;
 import com.xenotask.xeno.repository.OrderRepository;
 import lombok.RequiredArgsConstructor;
@@ -24,20 +26,34 @@ public class AnalyticsService {
     private final OrderRepository orderRepository;
     private final TenantService tenantService;
     private final OrderLineItemRepository orderLineItemRepository;
-
+    private final DailyRollupService rollupService;
+    private final OrderColumnStore columnStore;
+    private final CustomerRepository customerRepository;
+    private final FirstOrderDateService firstOrderDateService;
 
     @Cacheable(value = "revenue:range", key = "#tenantHeader + ':' + #start + ':' + #end")
     public BigDecimal revenueInRange(String tenantHeader, LocalDateTime start, LocalDateTime end) {
         String tenantId = tenantService.resolveTenantIdOrDomain();
-        return orderRepository.sumRevenueInRange(tenantId, start, end);
+        OrderColumns columns = columnStore.columns(tenantId);
+        if (columns != null) return BigDecimal.valueOf(columns.revenueCents(start, end), 2);
+        DailyRollupService.Split split = split(tenantId, start, end);
+        if (split == null) return orderRepository.sumRevenueInRange(tenantId, start, end);
+        BigDecimal revenue = rollupService.totals(tenantId, split.firstDay(), split.lastDay()).revenue();
+        for (DailyRollupService.Edge e : split.edges()) revenue = revenue.add(orderRepository.sumRevenueInRange(tenantId, e.start(), e.end()));
+        return revenue;
     }
 
     @Cacheable(value = "revenue:daily", key = "#tenantHeader + ':' + #startDate + ':' + #endDate")
     public List<Map<String,Object>> dailyRevenue(String tenantHeader, LocalDate startDate, LocalDate endDate) {
         String tenantId = tenantService.resolveTenantIdOrDomain();
+        OrderColumns columns = columnStore.columns(tenantId);
+        if (columns != null) return columns.dailyRevenue(startDate, endDate);
         LocalDateTime start = startDate.atStartOfDay();
         LocalDateTime end = endDate.plusDays(1).atStartOfDay().minusSeconds(1);
-        return orderRepository.dailyRevenueSeries(tenantId, start, end).stream()
+        List<Object[]> rows = rollupService.isReady(tenantId)
+                ? rollupService.dailyRevenue(tenantId, startDate, endDate)
+                : orderRepository.dailyRevenueSeries(tenantId, start, end);
+        return rows.stream()
                 .map(row -> Map.of(
                         "date", row[0].toString(),
                         "revenue", row[1]))
@@ -47,6 +63,12 @@ public class AnalyticsService {
     @Cacheable(value = "orders:statusBreakdown", key = "#tenantHeader")
     public List<Map<String,Object>> statusBreakdown(String tenantHeader) {
         String tenantId = tenantService.resolveTenantIdOrDomain();
+        OrderColumns columns = columnStore.columns(tenantId);
+        if (columns != null) {
+            return columns.statusCounts().entrySet().stream()
+                    .map(e -> { Map<String,Object> m = new HashMap<>(); m.put("status", e.getKey()); m.put("count", e.getValue()); return m; })
+                    .collect(Collectors.toList());
+        }
         return orderRepository.countByFinancialStatus(tenantId).stream()
                 .map(r -> Map.of("status", r[0], "count", r[1]))
                 .collect(Collectors.toList());
@@ -55,6 +77,8 @@ public class AnalyticsService {
     @Cacheable(value = "customers:top", key = "#tenantHeader + ':' + #limit")
     public List<Map<String,Object>> topCustomers(String tenantHeader, int limit) {
         String tenantId = tenantService.resolveTenantIdOrDomain();
+        OrderColumns columns = columnStore.columns(tenantId);
+        if (columns != null) return topCustomers(columns, limit);
         return orderRepository.topCustomersByOrders(tenantId, PageRequest.of(0, limit)).stream()
                 .map(r -> Map.of(
                         "customerId", r[0],
@@ -64,19 +88,46 @@ public class AnalyticsService {
                 .collect(Collectors.toList());
     }
 
+    /** Ranking from the column snapshot; only the winners' names are read from the database */
+    private List<Map<String,Object>> topCustomers(OrderColumns columns, int limit) {
+        List<long[]> top = columns.topCustomers(Math.max(1, limit));
+        Map<Integer, Customer> byId = new HashMap<>();
+        for (Customer c : customerRepository.findAllById(top.stream().map(t -> (int) t[0]).toList())) byId.put(c.getId(), c);
+        List<Map<String,Object>> result = new ArrayList<>();
+        for (long[] t : top) {
+            Customer c = byId.get((int) t[0]);
+            if (c == null) continue;
+            Map<String,Object> m = new HashMap<>();
+            m.put("customerId", c.getId());
+            m.put("firstName", c.getFirstName());
+            m.put("lastName", c.getLastName());
+            m.put("totalSpent", BigDecimal.valueOf(t[1], 2));
+            result.add(m);
+        }
+        return result;
+    }
+
     // AOV (Average Order Value) and related totals
     @Cacheable(value = "analytics:aov", key = "#tenantHeader + ':' + #start + ':' + #end")
     public Map<String,Object> aov(String tenantHeader, LocalDateTime start, LocalDateTime end) {
         String tenantId = tenantService.resolveTenantIdOrDomain();
-        List<Object[]> rows = orderRepository.aovStats(tenantId, start, end);
+        DailyRollupService.Split split = split(tenantId, start, end);
         BigDecimal revenue = BigDecimal.ZERO;
         long orders = 0L;
         BigDecimal discounts = BigDecimal.ZERO;
-        if (!rows.isEmpty()) {
+        if (split != null) {
+            DailyRollupService.Totals t = rollupService.totals(tenantId, split.firstDay(), split.lastDay());
+            revenue = t.revenue();
+            orders = t.orders();
+            discounts = t.discounts();
+        }
+        for (DailyRollupService.Edge e : split == null ? List.of(new DailyRollupService.Edge(start, end)) : split.edges()) {
+            List<Object[]> rows = orderRepository.aovStats(tenantId, e.start(), e.end());
+            if (rows.isEmpty()) continue;
             Object[] r = rows.get(0);
-            revenue = (BigDecimal) r[0];
-            orders = ((Number) r[1]).longValue();
-            discounts = (BigDecimal) r[2];
+            revenue = revenue.add((BigDecimal) r[0]);
+            orders += ((Number) r[1]).longValue();
+            discounts = discounts.add((BigDecimal) r[2]);
         }
         BigDecimal aov = orders == 0 ? BigDecimal.ZERO : revenue.divide(BigDecimal.valueOf(orders), 2, RoundingMode.HALF_UP);
         Map<String,Object> resp = new HashMap<>();
@@ -91,13 +142,20 @@ public class AnalyticsService {
     @Cacheable(value = "analytics:upt", key = "#tenantHeader + ':' + #start + ':' + #end")
     public Map<String,Object> upt(String tenantHeader, LocalDateTime start, LocalDateTime end) {
         String tenantId = tenantService.resolveTenantIdOrDomain();
-        List<Object[]> rows = orderLineItemRepository.unitsAndOrdersInRange(tenantId, start, end);
+        DailyRollupService.Split split = split(tenantId, start, end);
         long units = 0L;
         long orders = 0L;
-        if (!rows.isEmpty()) {
+        if (split != null) {
+            DailyRollupService.Totals t = rollupService.totals(tenantId, split.firstDay(), split.lastDay());
+            units = t.units();
+            orders = t.itemOrders();
+        }
+        for (DailyRollupService.Edge e : split == null ? List.of(new DailyRollupService.Edge(start, end)) : split.edges()) {
+            List<Object[]> rows = orderLineItemRepository.unitsAndOrdersInRange(tenantId, e.start(), e.end());
+            if (rows.isEmpty()) continue;
             Object[] r = rows.get(0);
-            units = ((Number) r[0]).longValue();
-            orders = ((Number) r[1]).longValue();
+            units += ((Number) r[0]).longValue();
+            orders += ((Number) r[1]).longValue();
         }
         BigDecimal upt = orders == 0 ? BigDecimal.ZERO : BigDecimal.valueOf(units).divide(BigDecimal.valueOf(orders), 2, RoundingMode.HALF_UP);
         Map<String,Object> resp = new HashMap<>();
@@ -130,29 +188,79 @@ public class AnalyticsService {
         return result;
     }
 
-    // New vs Returning customers in range
+    // New (first-ever order in range) vs Returning (ordered in range, first order before it)
     @Cacheable(value = "analytics:newVsReturning", key = "#tenantHeader + ':' + #start + ':' + #end")
     public Map<String,Object> newVsReturning(String tenantHeader, LocalDateTime start, LocalDateTime end) {
         String tenantId = tenantService.resolveTenantIdOrDomain();
-        List<Object[]> rows = orderRepository.ordersPerCustomerInRange(tenantId, start, end);
-        long newbies = 0L;
-        long returning = 0L;
-        for (Object[] r : rows) {
-            long cnt = ((Number) r[1]).longValue();
-            if (cnt == 1L) newbies++;
-            else if (cnt > 1L) returning++;
-        }
-        return Map.of("new", newbies, "returning", returning);
+        Object[] r = first(firstOrderDateService.isReady(tenantId)
+                ? orderRepository.newVsReturningInRange(tenantId, start, end)
+                : orderRepository.newVsReturningByOrderCount(tenantId, start, end), 2);
+        return Map.of("new", count(r[0]), "returning", count(r[1]));
     }
 
     // Cancellation rate in range
     @Cacheable(value = "analytics:cancellationRate", key = "#tenantHeader + ':' + #start + ':' + #end")
     public Map<String,Object> cancellationRate(String tenantHeader, LocalDateTime start, LocalDateTime end) {
         String tenantId = tenantService.resolveTenantIdOrDomain();
-        long total = orderRepository.countOrdersInRange(tenantId, start, end);
-        long cancelled = orderRepository.countCancelledInRange(tenantId, start, end);
+        DailyRollupService.Split split = split(tenantId, start, end);
+        long total = 0L;
+        long cancelled = 0L;
+        if (split != null) {
+            DailyRollupService.Totals t = rollupService.totals(tenantId, split.firstDay(), split.lastDay());
+            total = t.orders();
+            cancelled = t.cancellations();
+        }
+        for (DailyRollupService.Edge e : split == null ? List.of(new DailyRollupService.Edge(start, end)) : split.edges()) {
+            List<Object[]> rows = orderRepository.countOrdersAndCancelledInRange(tenantId, e.start(), e.end());
+            if (rows.isEmpty()) continue;
+            total += ((Number) rows.get(0)[0]).longValue();
+            cancelled += ((Number) rows.get(0)[1]).longValue();
+        }
         BigDecimal rate = total == 0 ? BigDecimal.ZERO : BigDecimal.valueOf(cancelled)
                 .divide(BigDecimal.valueOf(total), 4, RoundingMode.HALF_UP);
         return Map.of("cancelled", cancelled, "total", total, "rate", rate);
     }
+
+    /**
+     * Dashboard bundle of the range KPIs (revenue, AOV, UPT, cancellation rate, new vs returning) from one
+     * aggregate query over orders and one over order_line_items, instead of one or two queries per KPI. Until
+     * first_order_date is backfilled the orders query counts new customers by orders in the range instead.
+     */
+    @Cacheable(value = "analytics:kpis", key = "#tenantHeader + ':' + #start + ':' + #end")
+    public Map<String,Object> kpis(String tenantHeader, LocalDateTime start, LocalDateTime end) {
+        String tenantId = tenantService.resolveTenantIdOrDomain();
+        Object[] o = first(firstOrderDateService.isReady(tenantId)
+                ? orderRepository.rangeKpis(tenantId, start, end)
+                : orderRepository.rangeKpisByOrderCount(tenantId, start, end), 6);
+        long newCustomers = count(o[5]);
+        long returning = Math.max(0L, count(o[4]) - newCustomers);
+        Object[] li = first(orderLineItemRepository.unitsAndOrdersInRange(tenantId, start, end), 2);
+        BigDecimal revenue = decimal(o[0]);
+        long orders = count(o[1]);
+        long cancelled = count(o[3]);
+        long units = count(li[0]);
+        long unitOrders = count(li[1]);
+        Map<String,Object> resp = new HashMap<>();
+        resp.put("revenue", revenue);
+        resp.put("orders", orders);
+        resp.put("discounts", decimal(o[2]));
+        resp.put("aov", orders == 0 ? BigDecimal.ZERO : revenue.divide(BigDecimal.valueOf(orders), 2, RoundingMode.HALF_UP));
+        resp.put("units", units);
+        resp.put("upt", unitOrders == 0 ? BigDecimal.ZERO : BigDecimal.valueOf(units).divide(BigDecimal.valueOf(unitOrders), 2, RoundingMode.HALF_UP));
+        resp.put("cancelled", cancelled);
+        resp.put("cancellationRate", orders == 0 ? BigDecimal.ZERO : BigDecimal.valueOf(cancelled).divide(BigDecimal.valueOf(orders), 4, RoundingMode.HALF_UP));
+        resp.put("new", newCustomers);
+        resp.put("returning", returning);
+        return resp;
+    }
+
+    private static Object[] first(List<Object[]> rows, int width) { return rows.isEmpty() ? new Object[width] : rows.get(0); }
+    private static BigDecimal decimal(Object v) { return v == null ? BigDecimal.ZERO : new BigDecimal(v.toString()); }
+    private static long count(Object v) { return v == null ? 0L : ((Number) v).longValue(); }
+
+    /** Whole days of [start, end] are answered from daily rollups; null = no whole day (or rollups not ready), use raw rows */
+    private DailyRollupService.Split split(String tenantId, LocalDateTime start, LocalDateTime end) {
+        DailyRollupService.Split split = DailyRollupService.split(start, end);
+        return split != null && rollupService.isReady(tenantId) ? split : null;
+    }
 }
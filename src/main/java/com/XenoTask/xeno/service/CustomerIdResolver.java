@@ -0,0 +1,100 @@
+package com.xenotask.xeno.service;
+
+import com.xenotask.xeno.entity.Customer;
+import com.xenotask.xeno.entity.Tenant;
+import com.xenotask.xeno.repository.CustomerRepository;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Per-sync, per-tenant shopifyCustomerId -> customers.id cache used while ingesting orders.
+ * Backed by an open-addressing long->int table so a large tenant does not cost one boxed entry per customer.
+ * Not thread-safe; one instance belongs to one sync loop.
+ */
+public final class CustomerIdResolver {
+    private static final int MISSING = -1; // looked up, no such customer
+    private static final long EMPTY = 0L;  // Shopify ids are positive
+
+    private final Tenant tenant;
+    private final CustomerRepository customerRepository;
+
+    private long[] keys = new long[1024];
+    private int[] values = new int[1024];
+    private int size;
+
+    CustomerIdResolver(Tenant tenant, CustomerRepository customerRepository) {
+        this.tenant = tenant;
+        this.customerRepository = customerRepository;
+    }
+
+    public String getTenantId() { return tenant.getTenantId(); }
+
+    /** Loads every not yet known id of a page in one query; ids without a customer row are remembered as missing. */
+    public void prefill(Collection<Long> shopifyCustomerIds) {
+        List<Long> unknown = new ArrayList<>();
+        for (Long id : shopifyCustomerIds) {
+            if (id != null && id > 0 && slot(id) < 0) unknown.add(id);
+        }
+        if (unknown.isEmpty()) return;
+        for (Object[] r : customerRepository.findIdsByShopifyCustomerIds(tenant.getTenantId(), unknown)) {
+            put(((Number) r[0]).longValue(), ((Number) r[1]).intValue());
+        }
+        for (Long id : unknown) {
+            if (slot(id) < 0) put(id, MISSING);
+        }
+    }
+
+    /** customers.id for the Shopify id, or null. Ids not seen before fall back to the indexed single-row lookup. */
+    public Integer resolve(long shopifyCustomerId) {
+        if (shopifyCustomerId <= 0) return null;
+        int s = slot(shopifyCustomerId);
+        int id;
+        if (s >= 0) {
+            id = values[s];
+        } else {
+            id = customerRepository.findByTenantAndShopifyCustomerId(tenant, shopifyCustomerId)
+                    .map(Customer::getId)
+                    .orElse(MISSING);
+            put(shopifyCustomerId, id);
+        }
+        return id == MISSING ? null : id;
+    }
+
+    public int size() { return size; }
+
+    private int slot(long key) {
+        int mask = keys.length - 1;
+        for (int i = hash(key) & mask; ; i = (i + 1) & mask) {
+            if (keys[i] == key) return i;
+            if (keys[i] == EMPTY) return -1;
+        }
+    }
+
+    private void put(long key, int value) {
+        if ((size + 1) * 2 > keys.length) grow();
+        int mask = keys.length - 1;
+        int i = hash(key) & mask;
+        while (keys[i] != EMPTY && keys[i] != key) i = (i + 1) & mask;
+        if (keys[i] == EMPTY) size++;
+        keys[i] = key;
+        values[i] = value;
+    }
+
+    private void grow() {
+        long[] oldKeys = keys;
+        int[] oldValues = values;
+        keys = new long[oldKeys.length * 2];
+        values = new int[oldValues.length * 2];
+        size = 0;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != EMPTY) put(oldKeys[i], oldValues[i]);
+        }
+    }
+
+    private static int hash(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+}
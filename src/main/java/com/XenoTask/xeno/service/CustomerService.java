@@ -4,7 +4,6 @@ import com.fasterxml.jackson.databind.JsonNode;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
 
 import java.time.LocalDateTime;
 import java.time.ZoneOffset;
@@ -16,67 +15,49 @@ import java.util.Map;
 public class CustomerService {
     private static final Logger log = LoggerFactory.getLogger(CustomerService.class);
 
-    private final ShopifyApiService shopifyApiService;
+    private final ShopifyPagePipeline pagePipeline;
     private final CustomerUpsertService customerUpsertService;
+    private final SyncWatermarkService watermarkService;
 
-    public CustomerService(ShopifyApiService shopifyApiService,
-                           CustomerUpsertService customerUpsertService) {
-        this.shopifyApiService = shopifyApiService;
+    public CustomerService(ShopifyPagePipeline pagePipeline,
+                           CustomerUpsertService customerUpsertService,
+                           SyncWatermarkService watermarkService) {
+        this.pagePipeline = pagePipeline;
         this.customerUpsertService = customerUpsertService;
+        this.watermarkService = watermarkService;
     }
 
-    @Transactional
     public Integer syncCustomers(String tenantId, Integer limit, Integer pages) {
-        int total = 0;
-        int pageCount = 0;
-        String nextCursor = null;
         int effectiveLimit = (limit == null || limit <= 0) ? 50 : limit;
-        do {
-            ShopifyApiService.PagedResult pr = shopifyApiService.getCursorPage(
-                    tenantId,
-                    "/customers.json",
-                    effectiveLimit,
-                    nextCursor,
-                    null,
-                    "customers");
-            JsonNode arr = pr.items();
-            if (!arr.isArray() || arr.isEmpty()) break;
-            for (JsonNode cNode : arr) {
-                customerUpsertService.upsertCustomer(tenantId, cNode);
-                total++;
-            }
-            pageCount++;
-            nextCursor = pr.nextPageInfo();
-        } while (nextCursor != null && (pages == null || pageCount < pages));
-        log.info("Customers synced tenant={} count={} pages={}", tenantId, total, pageCount);
-        return total;
+        SyncWatermarkService.Window window = watermarkService.openFull(tenantId, SyncWatermarkService.CUSTOMERS, pages == null);
+        ShopifyPagePipeline.Result r = pagePipeline.run(tenantId, "/customers.json", effectiveLimit, null, "customers", pages,
+                arr -> upsertPage(tenantId, arr, window));
+        if (r.resumed()) window.markResumed(r.walkStartedAt());
+        watermarkService.advance(window);
+        log.info("Customers synced tenant={} count={} pages={} fetchMs={} persistMs={}", tenantId, r.records(), r.pages(), r.fetchMs(), r.persistMs());
+        return r.records();
     }
 
     /**
-     * Incremental customers sync using updated_at_min
+     * Incremental customers sync using updated_at_min; a null updatedSince starts from the stored watermark
      */
-    @Transactional
     public Integer syncCustomersUpdatedSince(String tenantId, LocalDateTime updatedSince, Integer limit) {
-        int total = 0;
-        String cursor = null;
         int effectiveLimit = (limit == null || limit <= 0) ? 50 : limit;
-        String updatedAtMin = updatedSince == null ? null : updatedSince.atOffset(ZoneOffset.UTC).format(DateTimeFormatter.ISO_OFFSET_DATE_TIME);
+        SyncWatermarkService.Window window = watermarkService.openIncremental(tenantId, SyncWatermarkService.CUSTOMERS, updatedSince);
+        String updatedAtMin = window.since() == null ? null : window.since().atOffset(ZoneOffset.UTC).format(DateTimeFormatter.ISO_OFFSET_DATE_TIME);
         Map<String,String> extra = new HashMap<>();
         if (updatedAtMin != null) extra.put("updated_at_min", updatedAtMin);
-        do {
-            ShopifyApiService.PagedResult pr = shopifyApiService.getCursorPage(
-                    tenantId,
-                    "/customers.json",
-                    effectiveLimit,
-                    cursor,
-                    extra,
-                    "customers");
-            JsonNode arr = pr.items();
-            if (!arr.isArray() || arr.isEmpty()) break;
-            for (JsonNode cNode : arr) { customerUpsertService.upsertCustomer(tenantId, cNode); total++; }
-            cursor = pr.nextPageInfo();
-        } while (cursor != null);
+        ShopifyPagePipeline.Result r = pagePipeline.run(tenantId, "/customers.json", effectiveLimit, extra, "customers", null,
+                arr -> upsertPage(tenantId, arr, window));
+        int total = r.records();
+        if (r.resumed()) window.markResumed(r.walkStartedAt());
+        watermarkService.advance(window);
         log.info("Incremental customers synced tenant={} count={} updated_at_min={}", tenantId, total, updatedAtMin);
         return total;
     }
+
+    private int upsertPage(String tenantId, JsonNode arr, SyncWatermarkService.Window window) {
+        window.observe(arr);
+        return customerUpsertService.upsertCustomers(tenantId, arr);
+    }
 }
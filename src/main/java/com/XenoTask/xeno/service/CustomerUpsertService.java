@@ -11,6 +11,13 @@ import org.springframework.transaction.annotation.Transactional;
 
 import java.math.BigDecimal;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Consumer;
 
 @Service
 public class CustomerUpsertService {
@@ -18,17 +25,62 @@ public class CustomerUpsertService {
     private final CustomerRepository customerRepository;
     private final CustomerAddressRepository addressRepository;
     private final TenantService tenantService;
+    private final OrderUpsertService orderUpsertService;
 
     public CustomerUpsertService(CustomerRepository customerRepository,
                                  CustomerAddressRepository addressRepository,
-                                 TenantService tenantService) {
+                                 TenantService tenantService,
+                                 OrderUpsertService orderUpsertService) {
         this.customerRepository = customerRepository;
         this.addressRepository = addressRepository;
         this.tenantService = tenantService;
+        this.orderUpsertService = orderUpsertService;
+    }
+
+    /**
+     * Upserts one page, skipping every customer whose payload fingerprint matches the stored payload_hash
+     * (one lookup for the page, no entity load). Returns the number of records seen.
+     */
+    @Transactional
+    public int upsertCustomers(String tenantId, JsonNode customers) {
+        List<Long> ids = new ArrayList<>();
+        for (JsonNode node : customers) ids.add(node.path("id").asLong());
+        Map<Long, Long> stored = new HashMap<>();
+        if (!ids.isEmpty()) {
+            for (Object[] r : customerRepository.findPayloadHashes(tenantId, ids)) stored.put(((Number) r[0]).longValue(), ((Number) r[1]).longValue());
+        }
+        int seen = 0;
+        int skipped = 0;
+        for (JsonNode node : customers) {
+            seen++;
+            long hash = PayloadFingerprint.of(node);
+            if (Objects.equals(stored.get(node.path("id").asLong()), hash)) {
+                skipped++;
+                continue;
+            }
+            upsertCustomer(tenantId, node, hash);
+        }
+        SyncMetrics.increment(SyncMetrics.RECORDS_SKIPPED, skipped);
+        return seen;
+    }
+
+    /** customers/delete webhooks; addresses and events go with the row, orders are kept without a customer */
+    @Transactional
+    public int deleteCustomers(String tenantId, Collection<Long> shopifyCustomerIds) {
+        if (shopifyCustomerIds.isEmpty()) return 0;
+        List<Customer> customers = customerRepository.findByTenantTenantIdAndShopifyCustomerIdIn(tenantId, shopifyCustomerIds);
+        if (customers.isEmpty()) return 0;
+        orderUpsertService.detachCustomers(tenantId, customers.stream().map(Customer::getId).toList());
+        customerRepository.deleteAll(customers);
+        return customers.size();
     }
 
     @Transactional
     public Customer upsertCustomer(String tenantId, JsonNode node) {
+        return upsertCustomer(tenantId, node, PayloadFingerprint.of(node));
+    }
+
+    private Customer upsertCustomer(String tenantId, JsonNode node, long payloadHash) {
         Tenant tenant = tenantService.getRequiredByTenantId(tenantId);
         long shopifyCustomerId = node.path("id").asLong();
         Customer customer = customerRepository.findByTenantAndShopifyCustomerId(tenant, shopifyCustomerId)
@@ -50,32 +102,77 @@ public class CustomerUpsertService {
         customer.setLastOrderDate(parseDate(node.path("last_order_created_at")));
         customer.setTags(asText(node, "tags"));
         customer.setNote(asText(node, "note"));
+        customer.setPayloadHash(payloadHash);
 
+        boolean newCustomer = customer.getId() == null;
         Customer saved = customerRepository.save(customer);
-        handleAddresses(saved, node.path("addresses"));
+        int addressWrites = handleAddresses(saved, node.path("addresses"), newCustomer);
+        SyncMetrics.increment(SyncMetrics.ROWS_WRITTEN, 1L + addressWrites);
         return saved;
     }
 
-    private void handleAddresses(Customer customer, JsonNode addressesNode) {
-        if (!addressesNode.isArray()) return;
-        // basic strategy: delete & recreate (OPTIMIZE: diff later)
-        var existing = addressRepository.findByCustomerId(customer.getId());
-        addressRepository.deleteAll(existing);
+    /**
+     * Reconciles addresses by shopifyAddressId: inserts new ones, updates only rows whose fields differ and deletes
+     * rows Shopify no longer returns. Returns the number of rows written.
+     */
+    private int handleAddresses(Customer customer, JsonNode addressesNode, boolean newCustomer) {
+        if (!addressesNode.isArray()) return 0;
+        Map<Long, CustomerAddress> existing = new HashMap<>();
+        List<CustomerAddress> stale = new ArrayList<>();
+        if (!newCustomer) {
+            for (CustomerAddress ca : addressRepository.findByCustomerId(customer.getId())) {
+                // rows without an id (or duplicates of one) can never be matched again
+                if (ca.getShopifyAddressId() == null || existing.putIfAbsent(ca.getShopifyAddressId(), ca) != null) stale.add(ca);
+            }
+        }
+        List<CustomerAddress> changed = new ArrayList<>();
+        int inserted = 0;
+        int skipped = 0;
         for (JsonNode addr : addressesNode) {
-            CustomerAddress ca = CustomerAddress.builder()
-                    .customer(customer)
-                    .tenant(customer.getTenant())
-                    .shopifyAddressId(addr.path("id").asLong())
-                    .address1(asText(addr, "address1"))
-                    .address2(asText(addr, "address2"))
-                    .city(asText(addr, "city"))
-                    .province(asText(addr, "province"))
-                    .country(asText(addr, "country"))
-                    .zip(asText(addr, "zip"))
-                    .isDefault(addr.path("default").asBoolean(false))
-                    .build();
-            addressRepository.save(ca);
+            long shopifyAddressId = addr.path("id").asLong();
+            CustomerAddress ca = existing.remove(shopifyAddressId);
+            boolean isNew = ca == null;
+            if (isNew) {
+                ca = CustomerAddress.builder()
+                        .customer(customer)
+                        .tenant(customer.getTenant())
+                        .shopifyAddressId(shopifyAddressId)
+                        .build();
+            }
+            if (applyAddress(ca, addr) || isNew) {
+                changed.add(ca);
+                if (isNew) inserted++;
+            } else {
+                skipped++;
+            }
         }
+        stale.addAll(existing.values());
+        if (!stale.isEmpty()) addressRepository.deleteAllInBatch(stale);
+        if (!changed.isEmpty()) addressRepository.saveAll(changed);
+
+        SyncMetrics.increment(SyncMetrics.ADDRESSES_INSERTED, inserted);
+        SyncMetrics.increment(SyncMetrics.ADDRESSES_UPDATED, changed.size() - inserted);
+        SyncMetrics.increment(SyncMetrics.ADDRESSES_DELETED, stale.size());
+        SyncMetrics.increment(SyncMetrics.ADDRESSES_SKIPPED, skipped);
+        return changed.size() + stale.size();
+    }
+
+    /** Copies the Shopify fields onto the row; true when any of them differed. */
+    private boolean applyAddress(CustomerAddress ca, JsonNode addr) {
+        boolean dirty = update(ca.getAddress1(), asText(addr, "address1"), ca::setAddress1);
+        dirty |= update(ca.getAddress2(), asText(addr, "address2"), ca::setAddress2);
+        dirty |= update(ca.getCity(), asText(addr, "city"), ca::setCity);
+        dirty |= update(ca.getProvince(), asText(addr, "province"), ca::setProvince);
+        dirty |= update(ca.getCountry(), asText(addr, "country"), ca::setCountry);
+        dirty |= update(ca.getZip(), asText(addr, "zip"), ca::setZip);
+        dirty |= update(ca.getIsDefault(), addr.path("default").asBoolean(false), ca::setIsDefault);
+        return dirty;
+    }
+
+    private static <T> boolean update(T current, T value, Consumer<T> setter) {
+        if (Objects.equals(current, value)) return false;
+        setter.accept(value);
+        return true;
     }
 
     private String asText(JsonNode n, String field) { return n.hasNonNull(field) ? n.get(field).asText() : null; }
@@ -0,0 +1,225 @@
+package com.xenotask.xeno.service;
+
+import com.xenotask.xeno.repository.DailyOrderRollupRepository;
+import com.xenotask.xeno.repository.TenantRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.PessimisticLockingFailureException;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Keeps daily_order_rollups in step with the orders table. The order upsert/delete paths hand the created_at days
+ * they touched to {@link #refreshAfterCommit}; once their transaction committed, each day's row is recomputed from
+ * the raw rows (never patched by deltas) in a short READ COMMITTED transaction of its own. The writer therefore
+ * holds no rollup locks, and two writers refreshing the same day just upsert the same row one after the other.
+ * {@link #rebuild} backfills a whole tenant and records tenants.rollups_built_at. Analytics only read rollups of
+ * tenants with that flag ({@link #isReady}); tenants without it are rebuilt in the background at startup or on
+ * first use, and a refresh that gives up clears the flag again so the raw queries take over until the next rebuild.
+ */
+@Service
+public class DailyRollupService {
+    private static final Logger log = LoggerFactory.getLogger(DailyRollupService.class);
+
+    private static final int MAX_ATTEMPTS = 3;
+
+    private final DailyOrderRollupRepository rollupRepository;
+    private final TenantRepository tenantRepository;
+    private final TransactionTemplate refreshTx;
+    private final Set<String> ready = ConcurrentHashMap.newKeySet();    // tenants seen with rollups_built_at set
+    private final Set<String> building = ConcurrentHashMap.newKeySet(); // background rebuilds in flight
+    private final Map<String, ReentrantLock> tenantLocks = new ConcurrentHashMap<>(); // refresh vs rebuild on this instance
+
+    @Value("${analytics.rollups.enabled:true}")
+    private boolean enabled;
+
+    public DailyRollupService(DailyOrderRollupRepository rollupRepository,
+                              TenantRepository tenantRepository,
+                              PlatformTransactionManager transactionManager) {
+        this.rollupRepository = rollupRepository;
+        this.tenantRepository = tenantRepository;
+        this.refreshTx = new TransactionTemplate(transactionManager);
+        this.refreshTx.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        this.refreshTx.setIsolationLevel(TransactionDefinition.ISOLATION_READ_COMMITTED);
+    }
+
+    public boolean isEnabled() { return enabled; }
+
+    /** True when the tenant's rollups are complete; otherwise starts a background rebuild and returns false */
+    public boolean isReady(String tenantId) {
+        if (!enabled) return false;
+        if (built(tenantId)) return true;
+        rebuildAsync(tenantId);
+        return false;
+    }
+
+    /** Full syncs: builds the rollups of a tenant that never had them; built tenants are kept current by the upserts */
+    public void rebuildIfMissing(String tenantId) {
+        if (enabled && !built(tenantId)) rebuildOnce(tenantId);
+    }
+
+    private boolean built(String tenantId) {
+        if (ready.contains(tenantId)) return true;
+        if (tenantRepository.findRollupsBuiltAt(tenantId).isEmpty()) return false;
+        ready.add(tenantId);
+        return true;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void backfillMissing() {
+        if (!enabled) return;
+        Thread.ofVirtual().name("rollup-backfill").start(() -> {
+            for (String tenantId : tenantRepository.findTenantIdsWithoutRollups()) rebuildOnce(tenantId);
+        });
+    }
+
+    private void rebuildAsync(String tenantId) {
+        if (building.contains(tenantId)) return;
+        Thread.ofVirtual().name("rollup-rebuild-" + tenantId).start(() -> rebuildOnce(tenantId));
+    }
+
+    private void rebuildOnce(String tenantId) {
+        if (!building.add(tenantId)) return;
+        try {
+            rebuild(tenantId);
+        } catch (RuntimeException e) {
+            log.error("Daily rollup backfill failed tenant={} msg={}", tenantId, e.getMessage(), e);
+        } finally {
+            building.remove(tenantId);
+        }
+    }
+
+    /** Recomputes the days once the current transaction commits (right away when there is none) */
+    public void refreshAfterCommit(String tenantId, Collection<LocalDate> days) {
+        if (!enabled || days.isEmpty()) return;
+        Set<LocalDate> copy = Set.copyOf(days);
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            refreshDays(tenantId, copy);
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                refreshDays(tenantId, copy);
+            }
+        });
+    }
+
+    public void refreshDays(String tenantId, Collection<LocalDate> days) {
+        if (!enabled || days.isEmpty()) return;
+        LocalDate min = Collections.min(days);
+        LocalDate max = Collections.max(days);
+        try {
+            withTenantLock(tenantId, () -> {
+                rollupRepository.upsertDays(tenantId, min.atStartOfDay(), max.plusDays(1).atStartOfDay(), days);
+                rollupRepository.deleteEmptyDays(tenantId, days);
+            });
+        } catch (RuntimeException e) {
+            // the order write itself is committed; fall back to raw queries until the tenant is rebuilt
+            log.error("Daily rollup refresh failed tenant={} days={} msg={}", tenantId, days, e.getMessage(), e);
+            markStale(tenantId);
+        }
+    }
+
+    public void rebuild(String tenantId) {
+        if (!enabled) return;
+        long t0 = System.nanoTime();
+        int[] days = new int[1];
+        withTenantLock(tenantId, () -> {
+            days[0] = rollupRepository.upsertAllForTenant(tenantId);
+            rollupRepository.deleteEmptyDaysForTenant(tenantId);
+            tenantRepository.setRollupsBuiltAt(tenantId, LocalDateTime.now());
+        });
+        ready.add(tenantId);
+        log.info("Daily rollups rebuilt tenant={} rows={} durationMs={}", tenantId, days[0], (System.nanoTime() - t0) / 1_000_000L);
+    }
+
+    private void markStale(String tenantId) {
+        ready.remove(tenantId);
+        try {
+            refreshTx.executeWithoutResult(status -> tenantRepository.setRollupsBuiltAt(tenantId, null));
+        } catch (RuntimeException e) {
+            log.error("Could not clear rollups_built_at tenant={} msg={}", tenantId, e.getMessage(), e);
+        }
+    }
+
+    /** One READ COMMITTED transaction, retried when MySQL picks it as a deadlock victim or times out on a lock */
+    private void withTenantLock(String tenantId, Runnable work) {
+        ReentrantLock lock = tenantLocks.computeIfAbsent(tenantId, k -> new ReentrantLock());
+        lock.lock();
+        try {
+            for (int attempt = 1; ; attempt++) {
+                try {
+                    refreshTx.executeWithoutResult(status -> work.run());
+                    return;
+                } catch (PessimisticLockingFailureException e) {
+                    if (attempt >= MAX_ATTEMPTS) throw e;
+                    log.warn("Daily rollup write retried tenant={} attempt={} msg={}", tenantId, attempt, e.getMessage());
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Totals over the whole days [fromDay, toDay] */
+    public Totals totals(String tenantId, LocalDate fromDay, LocalDate toDay) {
+        List<Object[]> rows = rollupRepository.totals(tenantId, fromDay, toDay);
+        if (rows.isEmpty()) return Totals.EMPTY;
+        Object[] r = rows.get(0);
+        return new Totals(big(r[0]), num(r[1]), big(r[2]), num(r[3]), num(r[4]), num(r[5]));
+    }
+
+    public List<Object[]> dailyRevenue(String tenantId, LocalDate fromDay, LocalDate toDay) {
+        return rollupRepository.dailyRevenue(tenantId, fromDay, toDay);
+    }
+
+    /**
+     * Splits the inclusive range [start, end] into the whole days it covers and the partial days at either end.
+     * Returns null when not even one whole day is covered.
+     */
+    public static Split split(LocalDateTime start, LocalDateTime end) {
+        LocalDate first = start.equals(start.toLocalDate().atStartOfDay()) ? start.toLocalDate() : start.toLocalDate().plusDays(1);
+        LocalDate last = end.isBefore(end.toLocalDate().plusDays(1).atStartOfDay().minusSeconds(1)) ? end.toLocalDate().minusDays(1) : end.toLocalDate();
+        if (first.isAfter(last)) return null;
+        LocalDateTime headEnd = first.atStartOfDay().minusSeconds(1);
+        LocalDateTime tailStart = last.plusDays(1).atStartOfDay();
+        return new Split(first, last,
+                start.isAfter(headEnd) ? null : new Edge(start, headEnd),
+                end.isBefore(tailStart) ? null : new Edge(tailStart, end));
+    }
+
+    private static BigDecimal big(Object o) { return o == null ? BigDecimal.ZERO : new BigDecimal(o.toString()); }
+    private static long num(Object o) { return o == null ? 0L : ((Number) o).longValue(); }
+
+    public record Totals(BigDecimal revenue, long orders, BigDecimal discounts, long cancellations, long units, long itemOrders) {
+        static final Totals EMPTY = new Totals(BigDecimal.ZERO, 0, BigDecimal.ZERO, 0, 0, 0);
+    }
+
+    /** Whole days [firstDay, lastDay] plus the optional raw-row ranges before and after them */
+    public record Split(LocalDate firstDay, LocalDate lastDay, Edge head, Edge tail) {
+        public List<Edge> edges() {
+            return head == null ? (tail == null ? List.of() : List.of(tail)) : (tail == null ? List.of(head) : List.of(head, tail));
+        }
+    }
+
+    public record Edge(LocalDateTime start, LocalDateTime end) {}
+}
@@ -1,45 +1,130 @@
 package com.xenotask.xeno.service;
 
 import com.xenotask.xeno.entity.Tenant;
+import com.xenotask.xeno.messaging.TenantFairScheduler;
 
-import lombok.RequiredArgsConstructor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Semaphore;
+import java.util.function.Consumer;
 
+/**
+ * Fleet-wide syncs. Every tenant is submitted to the {@link TenantFairScheduler} that also runs queued jobs, so
+ * fleet runs share its pool-derived concurrency limit and never overlap a queued job of the same tenant. A
+ * per-shop cap additionally keeps one store from being synced twice at once against its own Shopify rate limit.
+ */
 @Service
-@RequiredArgsConstructor
 public class DataSyncService {
     private static final Logger log = LoggerFactory.getLogger(DataSyncService.class);
+    private static final int MAX_RETAINED_JOBS = 50;
+
     private final TenantService tenantService;
     private final SyncService syncService;
+    private final TenantFairScheduler fairScheduler;
+    private final int perShopLimit;
+    private final Map<String, Semaphore> shopPermits = new ConcurrentHashMap<>();
+    private final Map<String, FleetSyncJob> jobs = new LinkedHashMap<>();
 
-    /** Full sync for all active tenants */
-    public void fullSyncAll() {
-        List<Tenant> tenants = tenantService.listActiveTenants();
-        for (Tenant t : tenants) {
-            try {
-                syncService.fullSync(t.getTenantId());
-            } catch (Exception ex) {
-                log.error("Full sync failed for tenant={} msg={}", t.getTenantId(), ex.getMessage());
-            }
+    public DataSyncService(TenantService tenantService,
+                           SyncService syncService,
+                           TenantFairScheduler fairScheduler,
+                           @Value("${sync.fleet.max-concurrent-per-shop:1}") int perShopLimit) {
+        this.tenantService = tenantService;
+        this.syncService = syncService;
+        this.fairScheduler = fairScheduler;
+        this.perShopLimit = Math.max(1, perShopLimit);
+    }
+
+    /** Full sync for all active tenants; returns the job handle immediately */
+    public FleetSyncJob fullSyncAll() {
+        return start("full_all", syncService::fullSync);
+    }
+
+    /** Incremental sync for all active tenants; returns the job handle immediately */
+    public FleetSyncJob incrementalSyncAll(LocalDateTime since) {
+        return start("incremental_all", tenantId -> syncService.incrementalSync(tenantId, since));
+    }
+
+    public Optional<FleetSyncJob> findJob(String jobId) {
+        synchronized (jobs) {
+            return Optional.ofNullable(jobs.get(jobId));
         }
     }
 
-    /** Incremental sync for all active tenants */
-    public void incrementalSyncAll(LocalDateTime since) {
+    private FleetSyncJob start(String type, Consumer<String> syncTenant) {
         List<Tenant> tenants = tenantService.listActiveTenants();
-        for (Tenant t : tenants) {
+        List<String> tenantIds = tenants.stream().map(Tenant::getTenantId).toList();
+        FleetSyncJob job = new FleetSyncJob(UUID.randomUUID().toString(), type, tenantIds);
+        remember(job);
+        Thread.ofVirtual().name("fleet-sync-" + job.getJobId()).start(() -> {
+            CountDownLatch remaining = new CountDownLatch(tenants.size());
             try {
-                syncService.incrementalSync(t.getTenantId(), since);
-            } catch (Exception ex) {
-                log.error("Incremental sync failed tenant={} msg={}", t.getTenantId(), ex.getMessage());
+                for (Tenant t : tenants) {
+                    String tenantId = t.getTenantId();
+                    fairScheduler.submit(tenantId, () -> runTenant(job, t, syncTenant), failure -> {
+                        if (failure == null) {
+                            job.succeeded(tenantId);
+                        } else {
+                            log.error("Fleet sync failed job={} tenant={} msg={}", job.getJobId(), tenantId, failure.getMessage());
+                            job.failed(tenantId, failure.getMessage());
+                        }
+                        remaining.countDown();
+                    });
+                }
+                remaining.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                job.finish();
+                log.info("Fleet sync finished job={} type={} {}", job.getJobId(), type, job.snapshot().get("status"));
             }
-        }
+        });
+        log.info("Fleet sync started job={} type={} tenants={}", job.getJobId(), type, tenantIds.size());
+        return job;
     }
 
+    /** Runs in a scheduler slot; failures reach the submit callback */
+    private void runTenant(FleetSyncJob job, Tenant tenant, Consumer<String> syncTenant) {
+        String tenantId = tenant.getTenantId();
+        Semaphore shop = shopPermits.computeIfAbsent(tenant.getShopDomain(), s -> new Semaphore(perShopLimit, true));
+        try {
+            shop.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("interrupted", e);
+        }
+        try {
+            job.running(tenantId);
+            syncTenant.accept(tenantId);
+        } finally {
+            shop.release();
+        }
+    }
 
+    private void remember(FleetSyncJob job) {
+        synchronized (jobs) {
+            jobs.put(job.getJobId(), job);
+            if (jobs.size() > MAX_RETAINED_JOBS) {
+                // drop the oldest finished handles first
+                List<String> finished = new ArrayList<>();
+                jobs.forEach((id, j) -> { if (j.isFinished()) finished.add(id); });
+                for (String id : finished) {
+                    if (jobs.size() <= MAX_RETAINED_JOBS) break;
+                    jobs.remove(id);
+                }
+            }
+        }
+    }
 }
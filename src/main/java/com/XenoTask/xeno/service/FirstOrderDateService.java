@@ -0,0 +1,89 @@
+package com.xenotask.xeno.service;
+
+import com.xenotask.xeno.repository.CustomerRepository;
+import com.xenotask.xeno.repository.TenantRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Backfill state of customers.first_order_date. Order upserts keep the column current through
+ * CustomerRepository.refreshOrderMetrics, but customers stored before it existed start out null. Tenants without
+ * tenants.first_order_dates_built_at are backfilled in the background at startup or on first use; until then
+ * {@link #isReady} is false and new-vs-returning falls back to the per-range order count.
+ */
+@Service
+public class FirstOrderDateService {
+    private static final Logger log = LoggerFactory.getLogger(FirstOrderDateService.class);
+
+    private final CustomerRepository customerRepository;
+    private final TenantRepository tenantRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final Set<String> ready = ConcurrentHashMap.newKeySet();
+    private final Set<String> building = ConcurrentHashMap.newKeySet();
+
+    public FirstOrderDateService(CustomerRepository customerRepository,
+                                 TenantRepository tenantRepository,
+                                 PlatformTransactionManager transactionManager) {
+        this.customerRepository = customerRepository;
+        this.tenantRepository = tenantRepository;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    /** True when every customer of the tenant has first_order_date computed; otherwise starts a backfill */
+    public boolean isReady(String tenantId) {
+        if (built(tenantId)) return true;
+        if (!building.contains(tenantId)) Thread.ofVirtual().name("first-order-backfill-" + tenantId).start(() -> rebuildOnce(tenantId));
+        return false;
+    }
+
+    /** Full syncs: backfills a tenant that was never built; refreshOrderMetrics keeps built tenants current */
+    public void rebuildIfMissing(String tenantId) {
+        if (!built(tenantId)) rebuildOnce(tenantId);
+    }
+
+    private boolean built(String tenantId) {
+        if (ready.contains(tenantId)) return true;
+        if (tenantRepository.findFirstOrderDatesBuiltAt(tenantId).isEmpty()) return false;
+        ready.add(tenantId);
+        return true;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void backfillMissing() {
+        Thread.ofVirtual().name("first-order-backfill").start(() -> {
+            for (String tenantId : tenantRepository.findTenantIdsWithoutFirstOrderDates()) rebuildOnce(tenantId);
+        });
+    }
+
+    /** Recomputes first_order_date for every customer of the tenant and records the backfill */
+    public void rebuild(String tenantId) {
+        long t0 = System.nanoTime();
+        Integer customers = transactionTemplate.execute(status -> {
+            int n = customerRepository.refreshFirstOrderDates(tenantId);
+            tenantRepository.setFirstOrderDatesBuiltAt(tenantId, LocalDateTime.now());
+            return n;
+        });
+        ready.add(tenantId);
+        log.info("First order dates rebuilt tenant={} customers={} durationMs={}", tenantId, customers, (System.nanoTime() - t0) / 1_000_000L);
+    }
+
+    private void rebuildOnce(String tenantId) {
+        if (!building.add(tenantId)) return;
+        try {
+            rebuild(tenantId);
+        } catch (RuntimeException e) {
+            log.error("First order date backfill failed tenant={} msg={}", tenantId, e.getMessage(), e);
+        } finally {
+            building.remove(tenantId);
+        }
+    }
+}
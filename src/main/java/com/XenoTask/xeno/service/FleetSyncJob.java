@@ -0,0 +1,67 @@
+package com.xenotask.xeno.service;
+
+import java.time.LocalDateTime;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/** Handle of one fleet-wide sync started by DataSyncService; progress is read while tenants are still running. */
+public class FleetSyncJob {
+    public static final String QUEUED = "queued";
+    public static final String RUNNING = "running";
+    public static final String SUCCESS = "success";
+    public static final String ERROR = "error";
+
+    private final String jobId;
+    private final String type;
+    private final LocalDateTime startedAt = LocalDateTime.now();
+    private final Map<String, String> tenantStatus = new ConcurrentHashMap<>();
+    private final Map<String, String> tenantErrors = new ConcurrentHashMap<>();
+    private final AtomicInteger succeeded = new AtomicInteger();
+    private final AtomicInteger failed = new AtomicInteger();
+    private volatile LocalDateTime finishedAt;
+
+    FleetSyncJob(String jobId, String type, List<String> tenantIds) {
+        this.jobId = jobId;
+        this.type = type;
+        tenantIds.forEach(t -> tenantStatus.put(t, QUEUED));
+    }
+
+    public String getJobId() { return jobId; }
+    public String getType() { return type; }
+    public boolean isFinished() { return finishedAt != null; }
+
+    void running(String tenantId) { tenantStatus.put(tenantId, RUNNING); }
+
+    void succeeded(String tenantId) {
+        tenantStatus.put(tenantId, SUCCESS);
+        succeeded.incrementAndGet();
+    }
+
+    void failed(String tenantId, String message) {
+        tenantStatus.put(tenantId, ERROR);
+        if (message != null) tenantErrors.put(tenantId, message);
+        failed.incrementAndGet();
+    }
+
+    void finish() { finishedAt = LocalDateTime.now(); }
+
+    public Map<String, Object> snapshot() {
+        long running = tenantStatus.values().stream().filter(RUNNING::equals).count();
+        Map<String, Object> m = new LinkedHashMap<>();
+        m.put("jobId", jobId);
+        m.put("type", type);
+        m.put("status", finishedAt == null ? RUNNING : (failed.get() == 0 ? SUCCESS : ERROR));
+        m.put("startedAt", startedAt);
+        m.put("finishedAt", finishedAt);
+        m.put("tenants", tenantStatus.size());
+        m.put("running", running);
+        m.put("succeeded", succeeded.get());
+        m.put("failed", failed.get());
+        m.put("tenantStatus", Map.copyOf(tenantStatus));
+        m.put("errors", Map.copyOf(tenantErrors));
+        return m;
+    }
+}
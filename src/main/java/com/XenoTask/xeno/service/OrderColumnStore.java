@@ -0,0 +1,158 @@
+package com.xenotask.xeno.service;
+
+import com.xenotask.xeno.repository.OrderRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
+
+/**
+ * Optional in-process {@link OrderColumns} snapshots for the tenants listed in analytics.columnar.tenants.
+ * A tenant is loaded on first use on a virtual thread (callers fall back to SQL until it is ready). Committed
+ * order changes arrive as {@link OrdersChangedEvent}s. Their ids are collected and re-read in one batch every
+ * analytics.columnar.refresh-ms, and the new snapshot replaces the old one. Events are local to the instance
+ * that wrote, so every snapshot is also reloaded in the background once it is older than
+ * analytics.columnar.max-age-minutes; that bounds how long writes made by other instances stay invisible.
+ */
+@Service
+public class OrderColumnStore {
+    private static final Logger log = LoggerFactory.getLogger(OrderColumnStore.class);
+    private static final int REFRESH_CHUNK = 1000;
+
+    private final OrderRepository orderRepository;
+    private final TransactionTemplate readOnlyTx;
+    private final boolean enabled;
+    private final long maxAgeNanos;
+    private final Set<String> tenants = new HashSet<>();
+    private final Map<String, TenantColumns> state = new ConcurrentHashMap<>();
+
+    public OrderColumnStore(OrderRepository orderRepository,
+                            PlatformTransactionManager transactionManager,
+                            @Value("${analytics.columnar.enabled:false}") boolean enabled,
+                            @Value("${analytics.columnar.tenants:}") String tenants,
+                            @Value("${analytics.columnar.max-age-minutes:30}") long maxAgeMinutes) {
+        this.orderRepository = orderRepository;
+        this.readOnlyTx = new TransactionTemplate(transactionManager);
+        this.readOnlyTx.setReadOnly(true);
+        this.enabled = enabled;
+        this.maxAgeNanos = maxAgeMinutes * 60_000_000_000L;
+        for (String t : tenants.split(",")) if (!t.isBlank()) this.tenants.add(t.trim());
+    }
+
+    /** The tenant's current snapshot, or null when the tenant is not columnar or still loading */
+    public OrderColumns columns(String tenantId) {
+        if (!enabled || !tenants.contains(tenantId)) return null;
+        TenantColumns tc = state.computeIfAbsent(tenantId, TenantColumns::new);
+        OrderColumns snapshot = tc.snapshot;
+        if (snapshot == null) tc.loadAsync();
+        return snapshot;
+    }
+
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT, fallbackExecution = true)
+    public void onOrdersChanged(OrdersChangedEvent event) {
+        if (!enabled || !tenants.contains(event.tenantId())) return;
+        TenantColumns tc = state.get(event.tenantId());
+        if (tc != null) tc.changed(event.orderIds());
+    }
+
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT, fallbackExecution = true)
+    public void onTenantLifecycle(TenantLifecycleEvent event) {
+        if (event.type() == TenantLifecycleEvent.Type.REMOVED) state.remove(event.tenantId());
+    }
+
+    @Scheduled(fixedDelayString = "${analytics.columnar.refresh-ms:5000}")
+    public void refresh() {
+        if (!enabled) return;
+        for (TenantColumns tc : state.values()) {
+            try {
+                if (tc.snapshot != null && System.nanoTime() - tc.loadedAtNanos > maxAgeNanos) tc.loadAsync();
+                tc.applyPending();
+            } catch (RuntimeException e) {
+                log.error("Columnar refresh failed tenant={} msg={}", tc.tenantId, e.getMessage(), e);
+            }
+        }
+    }
+
+    private final class TenantColumns {
+        final String tenantId;
+        final Set<Integer> pending = ConcurrentHashMap.newKeySet();
+        volatile OrderColumns snapshot;
+        volatile long loadedAtNanos;
+        private boolean loading; // guarded by this
+
+        TenantColumns(String tenantId) { this.tenantId = tenantId; }
+
+        /** Nothing to patch before the first load starts: that load reads the change itself */
+        synchronized void changed(Collection<Integer> orderIds) {
+            if (snapshot == null && !loading) return;
+            pending.addAll(orderIds);
+        }
+
+        /** The current snapshot keeps serving while the load runs */
+        synchronized void loadAsync() {
+            if (loading) return;
+            loading = true;
+            pending.clear(); // already committed, so the load below reads them
+            Thread.ofVirtual().name("columnar-load-" + tenantId).start(this::load);
+        }
+
+        private void load() {
+            long t0 = System.nanoTime();
+            try {
+                // changes committed while the stream runs stay in pending and are re-read by the next refresh
+                OrderColumns loaded = readOnlyTx.execute(status -> {
+                    OrderColumns.Builder b = new OrderColumns.Builder(1024);
+                    try (Stream<Object[]> rows = orderRepository.streamColumnarRows(tenantId)) {
+                        rows.forEach(r -> b.add(OrderColumns.Row.of(r)));
+                    }
+                    return b.build();
+                });
+                synchronized (this) {
+                    snapshot = loaded;
+                    loadedAtNanos = t0;
+                }
+                log.info("Columnar orders loaded tenant={} orders={} durationMs={}", tenantId, loaded.size(), (System.nanoTime() - t0) / 1_000_000L);
+            } catch (RuntimeException e) {
+                log.error("Columnar load failed tenant={} msg={}", tenantId, e.getMessage(), e);
+            } finally {
+                synchronized (this) { loading = false; }
+            }
+        }
+
+        synchronized void applyPending() {
+            OrderColumns base = snapshot;
+            // while a load streams, pending ids wait for it: rows it read before their commit are re-read afterwards
+            if (base == null || loading || pending.isEmpty()) return;
+            Set<Integer> ids = new HashSet<>(pending);
+            pending.removeAll(ids);
+            List<Integer> all = new ArrayList<>(ids);
+            List<OrderColumns.Row> rows = new ArrayList<>(ids.size());
+            try {
+                for (int from = 0; from < all.size(); from += REFRESH_CHUNK) {
+                    for (Object[] r : orderRepository.findColumnarRows(tenantId, all.subList(from, Math.min(all.size(), from + REFRESH_CHUNK)))) {
+                        rows.add(OrderColumns.Row.of(r));
+                    }
+                }
+            } catch (RuntimeException e) {
+                pending.addAll(ids); // retried by the next refresh
+                throw e;
+            }
+            snapshot = OrderColumns.merge(base, ids, rows);
+            log.debug("Columnar orders refreshed tenant={} changed={} orders={}", tenantId, ids.size(), snapshot.size());
+        }
+    }
+}
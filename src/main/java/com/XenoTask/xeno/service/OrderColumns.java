@@ -0,0 +1,221 @@
+package com.xenotask.xeno.service;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+
+/**
+ * Immutable column snapshot of one tenant's orders, sorted by created_at. Each column is a primitive array:
+ * created_at as epoch seconds of the stored wall-clock time (the day is created / 86400), total_price in cents,
+ * a dense customer index and a financial_status code. A range query binary-searches the time column once and
+ * then runs a plain loop over contiguous slices, which C2 can unroll and vectorize. Changes produce a new
+ * snapshot through {@link #merge}; readers never see a partly updated one.
+ */
+public final class OrderColumns {
+
+    static final long NO_TIME = Long.MIN_VALUE; // created_at null: sorts first, never inside a range
+    static final int NO_CUSTOMER = -1;
+
+    private final int[] orderIds;
+    private final long[] created;
+    private final long[] priceCents;
+    private final int[] customer;    // index into customerIds, or NO_CUSTOMER
+    private final byte[] status;     // index into statuses
+    private final int[] customerIds; // dense index -> customers.id
+    private final String[] statuses; // code -> financial_status (may hold null)
+
+    private OrderColumns(int[] orderIds, long[] created, long[] priceCents, int[] customer, byte[] status,
+                         int[] customerIds, String[] statuses) {
+        this.orderIds = orderIds;
+        this.created = created;
+        this.priceCents = priceCents;
+        this.customer = customer;
+        this.status = status;
+        this.customerIds = customerIds;
+        this.statuses = statuses;
+    }
+
+    public int size() { return orderIds.length; }
+
+    /** One order as read from the database */
+    public record Row(int orderId, long created, long priceCents, Integer customerId, String status) {
+        static Row of(Object[] r) {
+            LocalDateTime createdAt = (LocalDateTime) r[1];
+            BigDecimal price = (BigDecimal) r[2];
+            return new Row(((Number) r[0]).intValue(),
+                    createdAt == null ? NO_TIME : epochSecond(createdAt),
+                    price == null ? 0L : price.movePointRight(2).longValue(),
+                    r[3] == null ? null : ((Number) r[3]).intValue(),
+                    (String) r[4]);
+        }
+    }
+
+    static long epochSecond(LocalDateTime t) { return t.toEpochSecond(ZoneOffset.UTC); }
+
+    /** Sum of total_price over created_at in [start, end], in cents */
+    public long revenueCents(LocalDateTime start, LocalDateTime end) {
+        int from = lowerBound(epochSecond(start));
+        int to = upperBound(epochSecond(end));
+        long sum = 0;
+        for (int i = from; i < to; i++) sum += priceCents[i];
+        return sum;
+    }
+
+    /** Revenue per created_at day in [startDate, endDate]; days without orders are left out, like the SQL series */
+    public List<Map<String,Object>> dailyRevenue(LocalDate startDate, LocalDate endDate) {
+        int from = lowerBound(startDate.toEpochDay() * 86_400L);
+        int to = lowerBound((endDate.toEpochDay() + 1) * 86_400L);
+        List<Map<String,Object>> series = new ArrayList<>();
+        int i = from;
+        while (i < to) {
+            long day = Math.floorDiv(created[i], 86_400L);
+            int dayEnd = lowerBound((day + 1) * 86_400L);
+            if (dayEnd > to) dayEnd = to;
+            long sum = 0;
+            for (int j = i; j < dayEnd; j++) sum += priceCents[j];
+            series.add(Map.of("date", LocalDate.ofEpochDay(day).toString(), "revenue", BigDecimal.valueOf(sum, 2)));
+            i = dayEnd;
+        }
+        return series;
+    }
+
+    /** The limit customers with the highest total_price over all their orders: customers.id and the total in cents */
+    public List<long[]> topCustomers(int limit) {
+        long[] spent = new long[customerIds.length];
+        boolean[] seen = new boolean[customerIds.length];
+        for (int i = 0; i < customer.length; i++) {
+            int c = customer[i];
+            if (c == NO_CUSTOMER) continue;
+            spent[c] += priceCents[i];
+            seen[c] = true;
+        }
+        PriorityQueue<long[]> top = new PriorityQueue<>((a, b) -> Long.compare(a[1], b[1]));
+        for (int c = 0; c < spent.length; c++) {
+            if (!seen[c]) continue;
+            if (top.size() < limit) top.add(new long[]{customerIds[c], spent[c]});
+            else if (spent[c] > top.peek()[1]) {
+                top.poll();
+                top.add(new long[]{customerIds[c], spent[c]});
+            }
+        }
+        List<long[]> result = new ArrayList<>(top);
+        result.sort((a, b) -> Long.compare(b[1], a[1]));
+        return result;
+    }
+
+    /** Order count per financial_status */
+    public Map<String, Long> statusCounts() {
+        long[] counts = new long[statuses.length];
+        for (byte s : status) counts[s]++;
+        Map<String, Long> result = new LinkedHashMap<>();
+        for (int s = 0; s < statuses.length; s++) if (counts[s] > 0) result.put(statuses[s], counts[s]);
+        return result;
+    }
+
+    /** First index with created >= t */
+    private int lowerBound(long t) {
+        int lo = 0, hi = created.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (created[mid] < t) lo = mid + 1; else hi = mid;
+        }
+        return lo;
+    }
+
+    /** First index with created > t */
+    private int upperBound(long t) {
+        int lo = 0, hi = created.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (created[mid] <= t) lo = mid + 1; else hi = mid;
+        }
+        return lo;
+    }
+
+    /**
+     * New snapshot: the rows of base whose order id is in replaced are dropped, then added (sorted by created)
+     * is merged in. A replaced id that is not in added was deleted.
+     */
+    public static OrderColumns merge(OrderColumns base, Set<Integer> replaced, List<Row> added) {
+        List<Row> sorted = new ArrayList<>(added);
+        sorted.sort((a, b) -> a.created() != b.created() ? Long.compare(a.created(), b.created()) : Integer.compare(a.orderId(), b.orderId()));
+        Builder b = new Builder(base.size() + sorted.size());
+        int j = 0;
+        for (int i = 0; i < base.size(); i++) {
+            if (replaced.contains(base.orderIds[i])) continue;
+            while (j < sorted.size() && sorted.get(j).created() < base.created[i]) b.add(sorted.get(j++));
+            int c = base.customer[i];
+            b.add(base.orderIds[i], base.created[i], base.priceCents[i], c == NO_CUSTOMER ? null : base.customerIds[c], base.statuses[base.status[i]]);
+        }
+        while (j < sorted.size()) b.add(sorted.get(j++));
+        return b.build();
+    }
+
+    /** Accumulates rows that arrive sorted by created */
+    public static final class Builder {
+        private int[] orderIds;
+        private long[] created;
+        private long[] priceCents;
+        private int[] customer;
+        private byte[] status;
+        private int size;
+        private final Map<Integer, Integer> customerIndex = new HashMap<>();
+        private final Map<String, Integer> statusIndex = new HashMap<>();
+        private final List<String> statuses = new ArrayList<>();
+
+        public Builder(int capacity) {
+            int c = Math.max(16, capacity);
+            orderIds = new int[c];
+            created = new long[c];
+            priceCents = new long[c];
+            customer = new int[c];
+            status = new byte[c];
+        }
+
+        public void add(Row r) {
+            add(r.orderId(), r.created(), r.priceCents(), r.customerId(), r.status());
+        }
+
+        void add(int orderId, long createdAt, long cents, Integer customerId, String financialStatus) {
+            if (size == orderIds.length) grow();
+            Integer code = statusIndex.get(financialStatus);
+            if (code == null) {
+                if (statuses.size() > Byte.MAX_VALUE) throw new IllegalStateException("Too many distinct financial statuses");
+                code = statuses.size();
+                statusIndex.put(financialStatus, code);
+                statuses.add(financialStatus);
+            }
+            orderIds[size] = orderId;
+            created[size] = createdAt;
+            priceCents[size] = cents;
+            customer[size] = customerId == null ? NO_CUSTOMER : customerIndex.computeIfAbsent(customerId, k -> customerIndex.size());
+            status[size] = (byte) (int) code;
+            size++;
+        }
+
+        private void grow() {
+            int c = orderIds.length * 2;
+            orderIds = Arrays.copyOf(orderIds, c);
+            created = Arrays.copyOf(created, c);
+            priceCents = Arrays.copyOf(priceCents, c);
+            customer = Arrays.copyOf(customer, c);
+            status = Arrays.copyOf(status, c);
+        }
+
+        public OrderColumns build() {
+            int[] ids = new int[customerIndex.size()];
+            customerIndex.forEach((id, idx) -> ids[idx] = id);
+            return new OrderColumns(Arrays.copyOf(orderIds, size), Arrays.copyOf(created, size), Arrays.copyOf(priceCents, size),
+                    Arrays.copyOf(customer, size), Arrays.copyOf(status, size), ids, statuses.toArray(new String[0]));
+        }
+    }
+}
@@ -4,7 +4,6 @@ import com.fasterxml.jackson.databind.JsonNode;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
 
 import java.time.LocalDateTime;
 import java.time.ZoneOffset;
@@ -17,69 +16,55 @@ import java.util.Map;
 public class OrderService {
     private static final Logger log = LoggerFactory.getLogger(OrderService.class);
 
-    private final ShopifyApiService shopifyApiService;
+    private final ShopifyPagePipeline pagePipeline;
     private final OrderUpsertService orderUpsertService;
+    private final SyncWatermarkService watermarkService;
 
-    public OrderService(ShopifyApiService shopifyApiService,
-                        OrderUpsertService orderUpsertService) {
-        this.shopifyApiService = shopifyApiService;
+    public OrderService(ShopifyPagePipeline pagePipeline,
+                        OrderUpsertService orderUpsertService,
+                        SyncWatermarkService watermarkService) {
+        this.pagePipeline = pagePipeline;
         this.orderUpsertService = orderUpsertService;
+        this.watermarkService = watermarkService;
     }
 
-    @Transactional
     public Integer syncOrders(String tenantId, LocalDateTime createdAfter, LocalDateTime createdBefore, Integer limit, Integer pages) {
-        int total = 0;
-        int pageCount = 0;
-        String nextCursor = null;
         int effectiveLimit = (limit == null || limit <= 0) ? 50 : limit;
+        CustomerIdResolver customers = orderUpsertService.customerResolver(tenantId);
         Map<String,String> baseParams = new LinkedHashMap<>();
         if (createdAfter != null) baseParams.put("created_at_min", createdAfter.toString());
         if (createdBefore != null) baseParams.put("created_at_max", createdBefore.toString());
-        do {
-            ShopifyApiService.PagedResult pr = shopifyApiService.getCursorPage(
-                    tenantId,
-                    "/orders.json",
-                    effectiveLimit,
-                    nextCursor,
-                    baseParams,
-                    "orders");
-            JsonNode arr = pr.items();
-            if (!arr.isArray() || arr.isEmpty()) break;
-            for (JsonNode o : arr) { orderUpsertService.upsertOrder(tenantId, o); total++; }
-            pageCount++;
-            nextCursor = pr.nextPageInfo();
-        } while (nextCursor != null && (pages == null || pageCount < pages));
-        log.info("Orders synced tenant={} count={} pages={}", tenantId, total, pageCount);
-        return total;
+        SyncWatermarkService.Window window = watermarkService.openFull(tenantId, SyncWatermarkService.ORDERS,
+                createdAfter == null && createdBefore == null && pages == null);
+        ShopifyPagePipeline.Result r = pagePipeline.run(tenantId, "/orders.json", effectiveLimit, baseParams, "orders", pages,
+                arr -> upsertPage(tenantId, arr, customers, window));
+        if (r.resumed()) window.markResumed(r.walkStartedAt());
+        watermarkService.advance(window);
+        log.info("Orders synced tenant={} count={} pages={} fetchMs={} persistMs={}", tenantId, r.records(), r.pages(), r.fetchMs(), r.persistMs());
+        return r.records();
     }
 
     /**
-     * Incremental orders sync using updated_at_min (falls back to created_at_min if desired)
+     * Incremental orders sync using updated_at_min; a null updatedSince starts from the stored watermark
      */
-    @Transactional
     public Integer syncOrdersUpdatedSince(String tenantId, LocalDateTime updatedSince, Integer limit, Integer pages) {
-        int total = 0;
-        int pageCount = 0;
-        String nextCursor = null;
         int effectiveLimit = (limit == null || limit <= 0) ? 50 : limit;
-        String updatedAtMin = updatedSince == null ? null : updatedSince.atOffset(ZoneOffset.UTC).format(DateTimeFormatter.ISO_OFFSET_DATE_TIME);
+        SyncWatermarkService.Window window = watermarkService.openIncremental(tenantId, SyncWatermarkService.ORDERS, updatedSince);
+        String updatedAtMin = window.since() == null ? null : window.since().atOffset(ZoneOffset.UTC).format(DateTimeFormatter.ISO_OFFSET_DATE_TIME);
+        CustomerIdResolver customers = orderUpsertService.customerResolver(tenantId);
         Map<String,String> baseParams = new LinkedHashMap<>();
         if (updatedAtMin != null) baseParams.put("updated_at_min", updatedAtMin);
-        do {
-            ShopifyApiService.PagedResult pr = shopifyApiService.getCursorPage(
-                    tenantId,
-                    "/orders.json",
-                    effectiveLimit,
-                    nextCursor,
-                    baseParams,
-                    "orders");
-            JsonNode arr = pr.items();
-            if (!arr.isArray() || arr.isEmpty()) break;
-            for (JsonNode o : arr) { orderUpsertService.upsertOrder(tenantId, o); total++; }
-            pageCount++;
-            nextCursor = pr.nextPageInfo();
-        } while (nextCursor != null && (pages == null || pageCount < pages));
+        ShopifyPagePipeline.Result r = pagePipeline.run(tenantId, "/orders.json", effectiveLimit, baseParams, "orders", pages,
+                arr -> upsertPage(tenantId, arr, customers, window));
+        int total = r.records();
+        if (r.resumed()) window.markResumed(r.walkStartedAt());
+        if (pages == null) watermarkService.advance(window); // a page-limited walk may have stopped short
         log.info("Incremental orders synced tenant={} count={} updated_at_min={}", tenantId, total, updatedAtMin);
         return total;
     }
+
+    private int upsertPage(String tenantId, JsonNode arr, CustomerIdResolver customers, SyncWatermarkService.Window window) {
+        window.observe(arr);
+        return orderUpsertService.upsertOrders(tenantId, arr, customers);
+    }
 }
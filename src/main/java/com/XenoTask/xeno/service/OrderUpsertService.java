@@ -2,13 +2,19 @@ package com.xenotask.xeno.service;
 
 import com.xenotask.xeno.entity.*;
 import com.xenotask.xeno.repository.*;
+import com.xenotask.xeno.repository.jdbc.OrderJdbcRepository;
+import com.xenotask.xeno.repository.jdbc.OrderJdbcRepository.LineItemRow;
+import com.xenotask.xeno.repository.jdbc.OrderJdbcRepository.OrderRow;
+import com.xenotask.xeno.repository.jdbc.OrderJdbcRepository.StoredLineItem;
 import com.fasterxml.jackson.databind.JsonNode;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.math.BigDecimal;
+import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeParseException;
 import java.util.*;
@@ -18,24 +24,90 @@ public class OrderUpsertService {
     private static final Logger log = LoggerFactory.getLogger(OrderUpsertService.class);
 
     private final OrderRepository orderRepository;
-    private final OrderLineItemRepository lineItemRepository;
     private final CustomerRepository customerRepository;
     private final ProductRepository productRepository;
     private final ProductVariantRepository variantRepository;
+    private final OrderJdbcRepository orderJdbcRepository;
     private final TenantService tenantService;
+    private final DailyRollupService rollupService;
+    private final ApplicationEventPublisher eventPublisher;
 
     public OrderUpsertService(OrderRepository orderRepository,
-                              OrderLineItemRepository lineItemRepository,
                               CustomerRepository customerRepository,
                               ProductRepository productRepository,
                               ProductVariantRepository variantRepository,
-                              TenantService tenantService) {
+                              OrderJdbcRepository orderJdbcRepository,
+                              TenantService tenantService,
+                              DailyRollupService rollupService,
+                              ApplicationEventPublisher eventPublisher) {
         this.orderRepository = orderRepository;
-        this.lineItemRepository = lineItemRepository;
         this.customerRepository = customerRepository;
         this.productRepository = productRepository;
         this.variantRepository = variantRepository;
+        this.orderJdbcRepository = orderJdbcRepository;
         this.tenantService = tenantService;
+        this.rollupService = rollupService;
+        this.eventPublisher = eventPublisher;
+    }
+
+    /**
+     * Bulk upsert of one Shopify orders page: one batched insert-or-update for the orders, one id lookup,
+     * one read of the current line items plus batched inserts/updates/deletes of only the changed ones,
+     * and one IN query each for products/variants/customers/payload hashes. Orders whose fingerprint
+     * (payload plus resolved customer/product/variant ids) matches payload_hash are skipped; the daily rollups of
+     * the changed orders' created_at days are recomputed once the transaction commits.
+     * Returns the number of orders seen.
+     */
+    @Transactional
+    public int upsertOrders(String tenantId, JsonNode orders) {
+        return upsertOrders(tenantId, orders, customerResolver(tenantId));
+    }
+
+    /** Same as {@link #upsertOrders(String, JsonNode)} but reuses a resolver that lives for the whole sync. */
+    @Transactional
+    public int upsertOrders(String tenantId, JsonNode orders, CustomerIdResolver customers) {
+        if (!orders.isArray() || orders.isEmpty()) return 0;
+
+        List<Long> shopifyCustomerIds = new ArrayList<>();
+        for (JsonNode node : orders) shopifyCustomerIds.add(node.path("customer").path("id").asLong(0));
+        customers.prefill(shopifyCustomerIds);
+
+        LineItemRefs refs = lineItemRefs(tenantId, orders);
+        List<Long> pageOrderIds = new ArrayList<>(orders.size());
+        for (JsonNode node : orders) pageOrderIds.add(node.path("id").asLong());
+        Map<Long, Long> storedHashes = toLongMap(orderRepository.findPayloadHashes(tenantId, pageOrderIds));
+
+        Set<Integer> pageCustomers = new HashSet<>();
+        Set<LocalDate> touchedDays = new HashSet<>();
+        List<OrderRow> orderRows = new ArrayList<>(orders.size());
+        List<JsonNode> changed = new ArrayList<>(orders.size());
+        for (JsonNode node : orders) {
+            Integer customerId = customers.resolve(node.path("customer").path("id").asLong(0));
+            long hash = fingerprint(node, customerId, refs);
+            if (Objects.equals(storedHashes.get(node.path("id").asLong()), hash)) continue;
+            if (customerId != null) pageCustomers.add(customerId);
+            OrderRow row = toOrderRow(tenantId, node, customerId, hash);
+            if (row.createdAt() != null) touchedDays.add(row.createdAt().toLocalDate());
+            orderRows.add(row);
+            changed.add(node);
+        }
+        SyncMetrics.increment(SyncMetrics.RECORDS_SKIPPED, orders.size() - changed.size());
+        if (orderRows.isEmpty()) return orders.size();
+
+        List<Long> shopifyOrderIds = orderRows.stream().map(OrderRow::shopifyOrderId).toList();
+        // previous owners too, so an order moving between customers corrects both sides
+        Set<Integer> touchedCustomers = new HashSet<>(orderRepository.findCustomerIdsByShopifyOrderIds(tenantId, shopifyOrderIds));
+        touchedCustomers.addAll(pageCustomers);
+        orderJdbcRepository.upsertOrders(orderRows);
+
+        Map<Long, Integer> orderIds = orderJdbcRepository.findOrderIds(tenantId, shopifyOrderIds);
+        int lineItems = reconcileLineItems(tenantId, changed, orderIds, refs);
+
+        updateCustomerMetrics(touchedCustomers);
+        rollupService.refreshAfterCommit(tenantId, touchedDays);
+        eventPublisher.publishEvent(new OrdersChangedEvent(tenantId, List.copyOf(orderIds.values())));
+        SyncMetrics.increment(SyncMetrics.ROWS_WRITTEN, (long) orderRows.size() + lineItems);
+        return orders.size();
     }
 
     @Transactional
@@ -44,6 +116,7 @@ public class OrderUpsertService {
         long shopifyOrderId = node.path("id").asLong();
         Order order = orderRepository.findByTenantTenantIdAndShopifyOrderId(tenantId, shopifyOrderId)
                 .orElseGet(() -> Order.builder().tenant(tenant).shopifyOrderId(shopifyOrderId).build());
+        Integer previousCustomerId = order.getCustomer() == null ? null : order.getCustomer().getId();
 
         order.setOrderNumber(text(node, "order_number"));
         order.setEmail(text(node, "email"));
@@ -62,59 +135,214 @@ public class OrderUpsertService {
         order.setCancelReason(text(node, "cancel_reason"));
         order.setTags(text(node, "tags"));
         order.setNote(text(node, "note"));
+        order.setPayloadHash(null); // bulk fingerprints include resolved ids; force the next page upsert to rewrite
 
         // attach customer if exists
         JsonNode custNode = node.path("customer");
         if (custNode.isObject()) {
-            long shopifyCustomerId = custNode.path("id").asLong();
-            Customer customer = customerRepository.findByTenantTenantId(tenantId).stream()
-                    .filter(c -> Objects.equals(c.getShopifyCustomerId(), shopifyCustomerId))
-                    .findFirst().orElse(null);
-            order.setCustomer(customer);
+            Integer customerId = customerResolver(tenantId).resolve(custNode.path("id").asLong());
+            order.setCustomer(customerId == null ? null : customerRepository.getReferenceById(customerId));
         }
 
         Order saved = orderRepository.save(order);
-        handleLineItems(tenant, saved, node.path("line_items"));
-        updateCustomerMetrics(saved.getCustomer());
+        reconcileLineItems(tenantId, List.of(node), Map.of(shopifyOrderId, saved.getId()), lineItemRefs(tenantId, List.of(node)));
+        Set<Integer> touchedCustomers = new HashSet<>();
+        if (previousCustomerId != null) touchedCustomers.add(previousCustomerId);
+        if (saved.getCustomer() != null) touchedCustomers.add(saved.getCustomer().getId());
+        updateCustomerMetrics(touchedCustomers);
+        if (saved.getCreatedAt() != null) rollupService.refreshAfterCommit(tenantId, Set.of(saved.getCreatedAt().toLocalDate()));
+        eventPublisher.publishEvent(new OrdersChangedEvent(tenantId, List.of(saved.getId())));
         return saved;
     }
 
-    private void handleLineItems(Tenant tenant, Order order, JsonNode lineItems) {
-        if (!lineItems.isArray()) return;
-        // naive: delete existing and recreate
-        List<OrderLineItem> existing = lineItemRepository.findByOrderId(order.getId());
-        lineItemRepository.deleteAll(existing);
-        for (JsonNode li : lineItems) {
-            OrderLineItem item = OrderLineItem.builder()
-                    .order(order)
-                    .tenant(tenant)
-                    .shopifyLineItemId(li.path("id").asLong())
-                    .title(text(li, "title"))
-                    .quantity(li.path("quantity").asInt())
-                    .price(asBig(li.path("price")))
-                    .totalDiscount(asBigOrZero(li.path("total_discount")))
-                    .sku(text(li, "sku"))
-                    .vendor(text(li, "vendor"))
-                    .build();
-            long productId = li.path("product_id").asLong(0);
-            long variantId = li.path("variant_id").asLong(0);
-            if (productId > 0) productRepository.findByTenantTenantIdAndShopifyProductId(tenant.getTenantId(), productId).ifPresent(item::setProduct);
-            if (variantId > 0) variantRepository.findByTenantTenantIdAndShopifyVariantId(tenant.getTenantId(), variantId).ifPresent(item::setVariant);
-            lineItemRepository.save(item);
+    /** orders/delete webhooks; line items cascade and the owners' totals and the affected daily rollups are recomputed */
+    @Transactional
+    public int deleteOrders(String tenantId, Collection<Long> shopifyOrderIds) {
+        if (shopifyOrderIds.isEmpty()) return 0;
+        Set<Integer> touchedCustomers = new HashSet<>(orderRepository.findCustomerIdsByShopifyOrderIds(tenantId, shopifyOrderIds));
+        List<Order> orders = orderRepository.findByTenantTenantIdAndShopifyOrderIdIn(tenantId, shopifyOrderIds);
+        Set<LocalDate> touchedDays = new HashSet<>();
+        for (Order o : orders) if (o.getCreatedAt() != null) touchedDays.add(o.getCreatedAt().toLocalDate());
+        List<Integer> orderIds = orders.stream().map(Order::getId).toList();
+        orderRepository.deleteAll(orders);
+        updateCustomerMetrics(touchedCustomers);
+        rollupService.refreshAfterCommit(tenantId, touchedDays);
+        eventPublisher.publishEvent(new OrdersChangedEvent(tenantId, orderIds));
+        return orders.size();
+    }
+
+    /** Customers about to be deleted: their orders stay and lose the customer link instead of being cascaded away */
+    @Transactional
+    public int detachCustomers(String tenantId, Collection<Integer> customerIds) {
+        if (customerIds.isEmpty()) return 0;
+        List<Object[]> rows = orderRepository.findIdsAndCreatedAtByCustomerIds(tenantId, customerIds);
+        if (rows.isEmpty()) return 0;
+        Set<LocalDate> touchedDays = new HashSet<>();
+        List<Integer> orderIds = new ArrayList<>(rows.size());
+        for (Object[] r : rows) {
+            orderIds.add((Integer) r[0]);
+            if (r[1] != null) touchedDays.add(((LocalDateTime) r[1]).toLocalDate());
+        }
+        orderRepository.detachCustomers(tenantId, customerIds);
+        rollupService.refreshAfterCommit(tenantId, touchedDays);
+        eventPublisher.publishEvent(new OrdersChangedEvent(tenantId, orderIds));
+        return rows.size();
+    }
+
+    /** A fresh shopifyCustomerId resolver for one sync of the tenant */
+    public CustomerIdResolver customerResolver(String tenantId) {
+        return new CustomerIdResolver(tenantService.getRequiredByTenantId(tenantId), customerRepository);
+    }
+
+    /**
+     * Diffs the line items of the given orders against what is stored, keyed by shopifyLineItemId: new ones are
+     * inserted, changed ones updated, vanished ones deleted (all batched) and unchanged ones left alone.
+     * Returns the number of rows written.
+     */
+    private int reconcileLineItems(String tenantId, Iterable<JsonNode> orders, Map<Long, Integer> orderIds, LineItemRefs refs) {
+        Map<Long, Integer> products = refs.products();
+        Map<Long, Integer> variants = refs.variants();
+        List<Integer> touchedOrders = new ArrayList<>();
+        List<LineItemRow> incoming = new ArrayList<>();
+        for (JsonNode node : orders) {
+            if (!node.path("line_items").isArray()) continue;
+            Integer orderId = orderIds.get(node.path("id").asLong());
+            if (orderId == null) continue;
+            touchedOrders.add(orderId);
+            for (JsonNode li : node.path("line_items")) {
+                incoming.add(new LineItemRow(tenantId, orderId,
+                        products.get(li.path("product_id").asLong(0)),
+                        variants.get(li.path("variant_id").asLong(0)),
+                        li.path("id").asLong(),
+                        text(li, "title"),
+                        li.path("quantity").asInt(),
+                        asBig(li.path("price")),
+                        asBigOrZero(li.path("total_discount")),
+                        text(li, "sku"),
+                        text(li, "vendor")));
+            }
         }
+
+        Map<LineItemKey, StoredLineItem> stored = new HashMap<>();
+        List<Integer> deletes = new ArrayList<>();
+        for (StoredLineItem s : orderJdbcRepository.findLineItems(touchedOrders)) {
+            LineItemKey key = new LineItemKey(s.row().orderId(), s.row().shopifyLineItemId());
+            // rows without a Shopify id (or duplicates) can never be matched; drop them
+            if (s.row().shopifyLineItemId() == 0L || stored.putIfAbsent(key, s) != null) deletes.add(s.id());
+        }
+        List<LineItemRow> inserts = new ArrayList<>();
+        List<StoredLineItem> updates = new ArrayList<>();
+        int skipped = 0;
+        for (LineItemRow row : incoming) {
+            StoredLineItem current = stored.remove(new LineItemKey(row.orderId(), row.shopifyLineItemId()));
+            if (current == null) inserts.add(row);
+            else if (!sameLineItem(current.row(), row)) updates.add(new StoredLineItem(current.id(), row));
+            else skipped++;
+        }
+        stored.values().forEach(s -> deletes.add(s.id()));
+
+        orderJdbcRepository.deleteLineItems(deletes);
+        orderJdbcRepository.updateLineItems(updates);
+        orderJdbcRepository.insertLineItems(inserts);
+        SyncMetrics.increment(SyncMetrics.LINE_ITEMS_INSERTED, inserts.size());
+        SyncMetrics.increment(SyncMetrics.LINE_ITEMS_UPDATED, updates.size());
+        SyncMetrics.increment(SyncMetrics.LINE_ITEMS_DELETED, deletes.size());
+        SyncMetrics.increment(SyncMetrics.LINE_ITEMS_SKIPPED, skipped);
+        return inserts.size() + updates.size() + deletes.size();
+    }
+
+    /** Column-wise comparison; decimals by value because the DB returns them at scale 2 */
+    private boolean sameLineItem(LineItemRow a, LineItemRow b) {
+        return Objects.equals(a.productId(), b.productId())
+                && Objects.equals(a.variantId(), b.variantId())
+                && Objects.equals(a.title(), b.title())
+                && a.quantity() == b.quantity()
+                && sameDecimal(a.price(), b.price())
+                && sameDecimal(a.totalDiscount(), b.totalDiscount())
+                && Objects.equals(a.sku(), b.sku())
+                && Objects.equals(a.vendor(), b.vendor());
+    }
+
+    private boolean sameDecimal(BigDecimal a, BigDecimal b) {
+        return a == null ? b == null : b != null && a.compareTo(b) == 0;
+    }
+
+    private record LineItemKey(int orderId, long shopifyLineItemId) {}
+
+    /** products.id / product_variants.id of every product and variant referenced by the given orders' line items */
+    private LineItemRefs lineItemRefs(String tenantId, Iterable<JsonNode> orders) {
+        Set<Long> productIds = new HashSet<>();
+        Set<Long> variantIds = new HashSet<>();
+        for (JsonNode node : orders) {
+            for (JsonNode li : node.path("line_items")) {
+                long productId = li.path("product_id").asLong(0);
+                long variantId = li.path("variant_id").asLong(0);
+                if (productId > 0) productIds.add(productId);
+                if (variantId > 0) variantIds.add(variantId);
+            }
+        }
+        return new LineItemRefs(
+                toIdMap(productIds.isEmpty() ? List.of() : productRepository.findIdsByShopifyProductIds(tenantId, productIds)),
+                toIdMap(variantIds.isEmpty() ? List.of() : variantRepository.findIdsByShopifyVariantIds(tenantId, variantIds)));
+    }
+
+    /** Payload fingerprint plus the ids it resolved to, so an order is rewritten once a missing customer/product appears */
+    private long fingerprint(JsonNode node, Integer customerId, LineItemRefs refs) {
+        long h = PayloadFingerprint.mix(PayloadFingerprint.of(node), customerId == null ? -1 : customerId);
+        for (JsonNode li : node.path("line_items")) {
+            Integer productId = refs.products().get(li.path("product_id").asLong(0));
+            Integer variantId = refs.variants().get(li.path("variant_id").asLong(0));
+            h = PayloadFingerprint.mix(h, productId == null ? -1 : productId);
+            h = PayloadFingerprint.mix(h, variantId == null ? -1 : variantId);
+        }
+        return h;
+    }
+
+    private OrderRow toOrderRow(String tenantId, JsonNode node, Integer customerId, Long payloadHash) {
+        return new OrderRow(tenantId,
+                customerId,
+                node.path("id").asLong(),
+                text(node, "order_number"),
+                text(node, "email"),
+                text(node, "financial_status"),
+                text(node, "fulfillment_status"),
+                asBig(node.path("total_price")),
+                asBig(node.path("subtotal_price")),
+                asBig(node.path("total_tax")),
+                asBig(node.path("total_discounts")),
+                deriveShipping(node),
+                text(node, "currency"),
+                node.path("confirmed").asBoolean(true),
+                parseDate(node.path("created_at")),
+                parseDate(node.path("updated_at")),
+                parseDate(node.path("cancelled_at")),
+                text(node, "cancel_reason"),
+                text(node, "tags"),
+                text(node, "note"),
+                payloadHash);
     }
 
-    private void updateCustomerMetrics(Customer customer) {
-        if (customer == null) return;
-        List<Order> orders = orderRepository.findByTenantTenantId(customer.getTenant().getTenantId());
-        BigDecimal spent = orders.stream()
-                .filter(o -> o.getCustomer() != null && Objects.equals(o.getCustomer().getId(), customer.getId()))
-                .map(o -> o.getTotalPrice() == null ? BigDecimal.ZERO : o.getTotalPrice())
-                .reduce(BigDecimal.ZERO, BigDecimal::add);
-        long count = orders.stream().filter(o -> o.getCustomer() != null && Objects.equals(o.getCustomer().getId(), customer.getId())).count();
-        customer.setTotalSpent(spent);
-        customer.setOrdersCount((int) count);
-        customerRepository.save(customer);
+    private Map<Long, Integer> toIdMap(List<Object[]> rows) {
+        Map<Long, Integer> map = new HashMap<>();
+        for (Object[] r : rows) map.put(((Number) r[0]).longValue(), ((Number) r[1]).intValue());
+        return map;
+    }
+
+    private Map<Long, Long> toLongMap(List<Object[]> rows) {
+        Map<Long, Long> map = new HashMap<>();
+        for (Object[] r : rows) map.put(((Number) r[0]).longValue(), ((Number) r[1]).longValue());
+        return map;
+    }
+
+    private record LineItemRefs(Map<Long, Integer> products, Map<Long, Integer> variants) {}
+
+    /**
+     * totalSpent/ordersCount are recomputed from the customer's own orders (indexed by customer_id), once per touched
+     * customer per page. A pure delta would drift because CustomerUpsertService seeds both fields from Shopify.
+     */
+    private void updateCustomerMetrics(Set<Integer> customerIds) {
+        if (customerIds.isEmpty()) return;
+        customerRepository.refreshOrderMetrics(customerIds);
     }
 
     private String text(JsonNode n, String f) { return n.hasNonNull(f) ? n.get(f).asText() : null; }
@@ -0,0 +1,10 @@
+package com.xenotask.xeno.service;
+
+import java.util.Collection;
+
+/**
+ * Published by OrderUpsertService with the orders.id values a transaction inserted, updated or deleted;
+ * listeners act after the transaction commits.
+ */
+public record OrdersChangedEvent(String tenantId, Collection<Integer> orderIds) {
+}
@@ -0,0 +1,70 @@
+package com.xenotask.xeno.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * 64-bit fingerprint of a Shopify record, stored as payload_hash so unchanged records can be skipped before any
+ * entity load. Object fields are visited in sorted order, so key order in the response does not matter; every
+ * value is tagged with its type so "1" and 1 hash differently. Not cryptographic, only for change detection.
+ */
+public final class PayloadFingerprint {
+    private static final long SEED = 0x9E3779B97F4A7C15L;
+    private static final long PRIME = 0x100000001B3L;
+
+    private PayloadFingerprint() {}
+
+    public static long of(JsonNode node) {
+        return finish(walk(SEED, node));
+    }
+
+    /** Folds extra inputs (e.g. resolved foreign keys) into a fingerprint */
+    public static long mix(long hash, long value) {
+        return finish((hash ^ value) * PRIME + SEED);
+    }
+
+    private static long walk(long h, JsonNode node) {
+        if (node == null || node.isMissingNode() || node.isNull()) return step(h, 'n');
+        if (node.isObject()) {
+            List<String> names = new ArrayList<>(node.size());
+            for (Iterator<String> it = node.fieldNames(); it.hasNext(); ) names.add(it.next());
+            names.sort(null);
+            h = step(h, '{');
+            for (String name : names) {
+                h = text(step(h, 'k'), name);
+                h = walk(h, node.get(name));
+            }
+            return step(h, '}');
+        }
+        if (node.isArray()) {
+            h = step(h, '[');
+            for (JsonNode child : node) h = walk(h, child);
+            return step(h, ']');
+        }
+        char tag = node.isTextual() ? 's' : node.isNumber() ? 'd' : node.isBoolean() ? 'b' : 'o';
+        return text(step(h, tag), node.asText());
+    }
+
+    private static long text(long h, String s) {
+        h = step(h, s.length());
+        for (int i = 0; i < s.length(); i++) h = step(h, s.charAt(i));
+        return h;
+    }
+
+    private static long step(long h, long v) {
+        return (h ^ v) * PRIME;
+    }
+
+    /** murmur3 fmix64 avalanche */
+    private static long finish(long h) {
+        h ^= h >>> 33;
+        h *= 0xFF51AFD7ED558CCDL;
+        h ^= h >>> 33;
+        h *= 0xC4CEB9FE1A85EC53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
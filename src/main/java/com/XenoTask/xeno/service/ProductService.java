@@ -22,70 +22,55 @@ import java.util.stream.Collectors;
 public class ProductService {
     private static final Logger log = LoggerFactory.getLogger(ProductService.class);
 
-    private final ShopifyApiService shopifyApiService;
+    private final ShopifyPagePipeline pagePipeline;
     private final ProductUpsertService productUpsertService;
     private final ProductVariantRepository productVariantRepository;
+    private final SyncWatermarkService watermarkService;
 
-    public ProductService(ShopifyApiService shopifyApiService,
-                          ProductUpsertService productUpsertService,
-                          ProductVariantRepository productVariantRepository) {
-        this.shopifyApiService = shopifyApiService;
+    public ProductService(ShopifyPagePipeline pagePipeline,
+                         ProductUpsertService productUpsertService,
+                         ProductVariantRepository productVariantRepository,
+                         SyncWatermarkService watermarkService) {
+        this.pagePipeline = pagePipeline;
         this.productUpsertService = productUpsertService;
         this.productVariantRepository = productVariantRepository;
+        this.watermarkService = watermarkService;
     }
 
-    @Transactional
     public Integer syncProducts(String tenantId, Integer limit, Integer pages) {
-        int total = 0;
-        int pageCount = 0;
-        String nextCursor = null;
         int effectiveLimit = (limit == null || limit <= 0) ? 50 : limit;
-        do {
-            ShopifyApiService.PagedResult pr = shopifyApiService.getCursorPage(
-                    tenantId,
-                    "/products.json",
-                    effectiveLimit,
-                    nextCursor,
-                    null,
-                    "products");
-            JsonNode arr = pr.items();
-            if (!arr.isArray() || arr.isEmpty()) break;
-            for (JsonNode p : arr) { productUpsertService.upsertProduct(tenantId, p); total++; }
-            pageCount++;
-            nextCursor = pr.nextPageInfo();
-        } while (nextCursor != null && (pages == null || pageCount < pages));
-        log.info("Products synced tenant={} count={} pages={}", tenantId, total, pageCount);
-        return total;
+        SyncWatermarkService.Window window = watermarkService.openFull(tenantId, SyncWatermarkService.PRODUCTS, pages == null);
+        ShopifyPagePipeline.Result r = pagePipeline.run(tenantId, "/products.json", effectiveLimit, null, "products", pages,
+                arr -> upsertPage(tenantId, arr, window));
+        if (r.resumed()) window.markResumed(r.walkStartedAt());
+        watermarkService.advance(window);
+        log.info("Products synced tenant={} count={} pages={} fetchMs={} persistMs={}", tenantId, r.records(), r.pages(), r.fetchMs(), r.persistMs());
+        return r.records();
     }
 
     /**
-     * Incremental products sync using updated_at_min
+     * Incremental products sync using updated_at_min; a null updatedSince starts from the stored watermark
      */
-    @Transactional
     public Integer syncProductsUpdatedSince(String tenantId, LocalDateTime updatedSince, Integer limit) {
-        int total = 0;
-        String cursor = null;
         int effectiveLimit = (limit == null || limit <= 0) ? 50 : limit;
-        String updatedAtMin = updatedSince == null ? null : updatedSince.atOffset(ZoneOffset.UTC).format(DateTimeFormatter.ISO_OFFSET_DATE_TIME);
+        SyncWatermarkService.Window window = watermarkService.openIncremental(tenantId, SyncWatermarkService.PRODUCTS, updatedSince);
+        String updatedAtMin = window.since() == null ? null : window.since().atOffset(ZoneOffset.UTC).format(DateTimeFormatter.ISO_OFFSET_DATE_TIME);
         Map<String,String> extra = new HashMap<>();
         if (updatedAtMin != null) extra.put("updated_at_min", updatedAtMin);
-        do {
-            ShopifyApiService.PagedResult pr = shopifyApiService.getCursorPage(
-                    tenantId,
-                    "/products.json",
-                    effectiveLimit,
-                    cursor,
-                    extra,
-                    "products");
-            JsonNode arr = pr.items();
-            if (!arr.isArray() || arr.isEmpty()) break;
-            for (JsonNode p : arr) { productUpsertService.upsertProduct(tenantId, p); total++; }
-            cursor = pr.nextPageInfo();
-        } while (cursor != null);
+        ShopifyPagePipeline.Result r = pagePipeline.run(tenantId, "/products.json", effectiveLimit, extra, "products", null,
+                arr -> upsertPage(tenantId, arr, window));
+        int total = r.records();
+        if (r.resumed()) window.markResumed(r.walkStartedAt());
+        watermarkService.advance(window);
         log.info("Incremental products synced tenant={} count={} updated_at_min={}", tenantId, total, updatedAtMin);
         return total;
     }
 
+    private int upsertPage(String tenantId, JsonNode arr, SyncWatermarkService.Window window) {
+        window.observe(arr);
+        return productUpsertService.upsertProducts(tenantId, arr);
+    }
+
     @Transactional(readOnly = true)
     public List<Map<String,Object>> getStockOutProducts(String tenantId, int limit) {
         int effectiveLimit = limit <= 0 ? 5 : limit;
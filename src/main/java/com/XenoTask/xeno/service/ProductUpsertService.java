@@ -1,10 +1,10 @@
 package com.xenotask.xeno.service;
 
 import com.xenotask.xeno.entity.Product;
-import com.xenotask.xeno.entity.ProductVariant;
 import com.xenotask.xeno.entity.Tenant;
 import com.xenotask.xeno.repository.ProductRepository;
-import com.xenotask.xeno.repository.ProductVariantRepository;
+import com.xenotask.xeno.repository.jdbc.ProductVariantJdbcRepository;
+import com.xenotask.xeno.repository.jdbc.ProductVariantJdbcRepository.VariantRow;
 import com.fasterxml.jackson.databind.JsonNode;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -15,25 +15,77 @@ import java.math.BigDecimal;
 import java.time.LocalDateTime;
 import java.time.OffsetDateTime;
 import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 
 @Service
 public class ProductUpsertService {
     private static final Logger log = LoggerFactory.getLogger(ProductUpsertService.class);
 
     private final ProductRepository productRepository;
-    private final ProductVariantRepository variantRepository;
+    private final ProductVariantJdbcRepository variantJdbcRepository;
     private final TenantService tenantService;
 
     public ProductUpsertService(ProductRepository productRepository,
-                                ProductVariantRepository variantRepository,
+                                ProductVariantJdbcRepository variantJdbcRepository,
                                 TenantService tenantService) {
         this.productRepository = productRepository;
-        this.variantRepository = variantRepository;
+        this.variantJdbcRepository = variantJdbcRepository;
         this.tenantService = tenantService;
     }
 
+    /**
+     * Upserts one page, skipping every product whose payload fingerprint (variants included) matches the stored
+     * payload_hash. Variants of the changed products are prefetched with one IN query and written as one batch.
+     * Returns the number of records seen.
+     */
+    @Transactional
+    public int upsertProducts(String tenantId, JsonNode products) {
+        List<Long> ids = new ArrayList<>();
+        for (JsonNode node : products) ids.add(node.path("id").asLong());
+        Map<Long, Long> stored = new HashMap<>();
+        if (!ids.isEmpty()) {
+            for (Object[] r : productRepository.findPayloadHashes(tenantId, ids)) stored.put(((Number) r[0]).longValue(), ((Number) r[1]).longValue());
+        }
+        int seen = 0;
+        int skipped = 0;
+        Map<Integer, JsonNode> changed = new LinkedHashMap<>();
+        for (JsonNode node : products) {
+            seen++;
+            long hash = PayloadFingerprint.of(node);
+            if (Objects.equals(stored.get(node.path("id").asLong()), hash)) {
+                skipped++;
+                continue;
+            }
+            changed.put(saveProduct(tenantId, node, hash).getId(), node);
+        }
+        int variantWrites = upsertVariants(tenantId, changed);
+        SyncMetrics.increment(SyncMetrics.RECORDS_SKIPPED, skipped);
+        SyncMetrics.increment(SyncMetrics.ROWS_WRITTEN, (long) changed.size() + variantWrites);
+        return seen;
+    }
+
+    /** products/delete webhooks; rows stay (order line items reference them) and are marked status=deleted */
+    @Transactional
+    public int deleteProducts(String tenantId, Collection<Long> shopifyProductIds) {
+        if (shopifyProductIds.isEmpty()) return 0;
+        return productRepository.markDeleted(tenantId, shopifyProductIds);
+    }
+
     @Transactional
     public Product upsertProduct(String tenantId, JsonNode node) {
+        Product saved = saveProduct(tenantId, node, PayloadFingerprint.of(node));
+        int variantWrites = upsertVariants(tenantId, Map.of(saved.getId(), node));
+        SyncMetrics.increment(SyncMetrics.ROWS_WRITTEN, 1L + variantWrites);
+        return saved;
+    }
+
+    private Product saveProduct(String tenantId, JsonNode node, long payloadHash) {
         Tenant tenant = tenantService.getRequiredByTenantId(tenantId);
         long shopifyProductId = node.path("id").asLong();
         Product product = productRepository.findByTenantTenantIdAndShopifyProductId(tenantId, shopifyProductId)
@@ -48,29 +100,75 @@ public class ProductUpsertService {
         product.setCreatedAt(parseDate(node.path("created_at")));
         product.setUpdatedAt(parseDate(node.path("updated_at")));
         product.setPublishedAt(parseDate(node.path("published_at")));
-        Product saved = productRepository.save(product);
-        handleVariants(tenant, saved, node.path("variants"));
-        return saved;
+        product.setPayloadHash(payloadHash);
+        return productRepository.save(product);
     }
 
-    private void handleVariants(Tenant tenant, Product product, JsonNode variantsNode) {
-        if (!variantsNode.isArray()) return;
-        for (JsonNode v : variantsNode) {
-            long shopifyVariantId = v.path("id").asLong();
-            ProductVariant variant = variantRepository.findByTenantTenantIdAndShopifyVariantId(tenant.getTenantId(), shopifyVariantId)
-                    .orElseGet(() -> ProductVariant.builder().tenant(tenant).product(product).shopifyVariantId(shopifyVariantId).build());
-            variant.setTitle(text(v, "title"));
-            variant.setPrice(asBigDecimal(v.path("price")));
-            variant.setCompareAtPrice(asBigDecimal(v.path("compare_at_price")));
-            variant.setSku(text(v, "sku"));
-            variant.setInventoryQuantity(v.path("inventory_quantity").asInt(variant.getInventoryQuantity() == null ? 0 : variant.getInventoryQuantity()));
-            variant.setWeight(asBigDecimal(v.path("weight")));
-            variant.setRequiresShipping(v.path("requires_shipping").asBoolean(true));
-            variant.setTaxable(v.path("taxable").asBoolean(true));
-            variant.setCreatedAt(parseDate(v.path("created_at")));
-            variant.setUpdatedAt(parseDate(v.path("updated_at")));
-            variantRepository.save(variant);
+    /**
+     * Loads the stored variants of all given products (products.id -> Shopify payload) in one query and sends only
+     * new or changed variants as one insert-or-update batch. Returns the number of variant rows written.
+     */
+    private int upsertVariants(String tenantId, Map<Integer, JsonNode> productsById) {
+        if (productsById.isEmpty()) return 0;
+        Map<Long, VariantRow> stored = variantJdbcRepository.findByProductIds(tenantId, productsById.keySet());
+        List<VariantRow> writes = new ArrayList<>();
+        int inserted = 0;
+        int skipped = 0;
+        for (Map.Entry<Integer, JsonNode> e : productsById.entrySet()) {
+            for (JsonNode v : e.getValue().path("variants")) {
+                VariantRow current = stored.get(v.path("id").asLong());
+                VariantRow row = toVariantRow(tenantId, e.getKey(), v, current);
+                if (current == null) {
+                    writes.add(row);
+                    inserted++;
+                } else if (!sameVariant(current, row)) {
+                    writes.add(row);
+                } else {
+                    skipped++;
+                }
+            }
         }
+        variantJdbcRepository.upsertVariants(writes);
+        SyncMetrics.increment(SyncMetrics.VARIANTS_INSERTED, inserted);
+        SyncMetrics.increment(SyncMetrics.VARIANTS_UPDATED, writes.size() - inserted);
+        SyncMetrics.increment(SyncMetrics.VARIANTS_SKIPPED, skipped);
+        return writes.size();
+    }
+
+    private VariantRow toVariantRow(String tenantId, int productId, JsonNode v, VariantRow current) {
+        int previousQty = current == null || current.inventoryQuantity() == null ? 0 : current.inventoryQuantity();
+        return new VariantRow(tenantId,
+                productId,
+                v.path("id").asLong(),
+                text(v, "title"),
+                asBigDecimal(v.path("price")),
+                asBigDecimal(v.path("compare_at_price")),
+                text(v, "sku"),
+                v.path("inventory_quantity").asInt(previousQty),
+                asBigDecimal(v.path("weight")),
+                v.path("requires_shipping").asBoolean(true),
+                v.path("taxable").asBoolean(true),
+                parseDate(v.path("created_at")),
+                parseDate(v.path("updated_at")));
+    }
+
+    /** Column-wise comparison; decimals by value because the DB returns them at their column scale */
+    private boolean sameVariant(VariantRow a, VariantRow b) {
+        return a.productId() == b.productId()
+                && Objects.equals(a.title(), b.title())
+                && sameDecimal(a.price(), b.price())
+                && sameDecimal(a.compareAtPrice(), b.compareAtPrice())
+                && Objects.equals(a.sku(), b.sku())
+                && Objects.equals(a.inventoryQuantity(), b.inventoryQuantity())
+                && sameDecimal(a.weight(), b.weight())
+                && Objects.equals(a.requiresShipping(), b.requiresShipping())
+                && Objects.equals(a.taxable(), b.taxable())
+                && Objects.equals(a.createdAt(), b.createdAt())
+                && Objects.equals(a.updatedAt(), b.updatedAt());
+    }
+
+    private boolean sameDecimal(BigDecimal a, BigDecimal b) {
+        return a == null ? b == null : b != null && a.compareTo(b) == 0;
     }
 
     private String text(JsonNode n, String f) { return n.hasNonNull(f) ? n.get(f).asText() : null; }
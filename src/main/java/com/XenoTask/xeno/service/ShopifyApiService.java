@@ -2,19 +2,27 @@ package com.xenotask.xeno.service;
 
 import com.xenotask.xeno.entity.Tenant;
 import com.xenotask.xeno.security.CryptoService;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.*;
 import org.springframework.stereotype.Service;
 import org.springframework.web.client.HttpStatusCodeException;
+import org.springframework.web.client.RestClientException;
+import org.springframework.web.client.ResponseExtractor;
 import org.springframework.web.client.RestTemplate;
 import org.springframework.web.util.UriComponentsBuilder;
 
+import java.io.IOException;
 import java.net.URI;
 import java.time.Duration;
 import java.util.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -29,12 +37,18 @@ public class ShopifyApiService {
     private final TenantService tenantService;
     private final ObjectMapper objectMapper;
     private final CryptoService cryptoService;
+    private final ShopifyRateLimiter rateLimiter;
 
-    public ShopifyApiService(RestTemplate restTemplate, TenantService tenantService, ObjectMapper objectMapper, CryptoService cryptoService) {
+    @Value("${shopify.http.max-attempts:5}")
+    private int maxAttempts;
+
+    public ShopifyApiService(RestTemplate restTemplate, TenantService tenantService, ObjectMapper objectMapper,
+                             CryptoService cryptoService, ShopifyRateLimiter rateLimiter) {
         this.restTemplate = restTemplate;
         this.tenantService = tenantService;
         this.objectMapper = objectMapper;
         this.cryptoService = cryptoService;
+        this.rateLimiter = rateLimiter;
     }
 
     private String baseUrl(String shopDomain) {
@@ -51,32 +65,67 @@ public class ShopifyApiService {
 
         Tenant tenant = tenantService.getRequiredByTenantId(tenantId);
         URI uri = buildUri(tenant.getShopDomain(), endpointPath, queryParams);
-        HttpHeaders headers = buildHeaders(tenant);
-        HttpEntity<Void> entity = new HttpEntity<>(headers);
+        return exchange(tenant, uri, resp -> objectMapper.readTree(resp.getBody()));
+    }
 
-        for (int attempt = 0; attempt < 3; attempt++) {
-            try {
-                ResponseEntity<String> resp =
-                        restTemplate.exchange(uri, HttpMethod.GET, entity, String.class);
-                logRateLimit(resp.getHeaders());
-                return objectMapper.readTree(resp.getBody());
-            } catch (HttpStatusCodeException ex) {
-                handleRetryOrThrow(ex, attempt);
-            } catch (Exception e) {
-                handleRetryOrThrow(e, attempt);
-            }
+    /** Admin GraphQL call; returns "data" and throws when the response carries top-level errors. */
+    public JsonNode graphql(String tenantId, String query, Map<String, Object> variables) {
+        Tenant tenant = tenantService.getRequiredByTenantId(tenantId);
+        URI uri = buildUri(tenant.getShopDomain(), "/graphql.json", null);
+        Map<String, Object> payload = new LinkedHashMap<>();
+        payload.put("query", query);
+        if (variables != null && !variables.isEmpty()) payload.put("variables", variables);
+        byte[] body;
+        try {
+            body = objectMapper.writeValueAsBytes(payload);
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not serialize GraphQL request", e);
         }
+        JsonNode resp = exchange(tenant, uri, HttpMethod.POST, body, r -> objectMapper.readTree(r.getBody()));
+        if (resp.path("errors").isArray() && !resp.path("errors").isEmpty()) {
+            throw new IllegalStateException("Shopify GraphQL error: " + resp.path("errors").get(0).path("message").asText());
+        }
+        return resp.path("data");
+    }
 
-        return objectMapper.nullNode(); // should never happen
+    /**
+     * Request through the shop's rate limiter; the extractor reads the body straight off the connection.
+     * 429s wait for Retry-After and retry; 5xx and I/O errors retry with backoff; other 4xx are thrown immediately.
+     */
+    private <T> T exchange(Tenant tenant, URI uri, ResponseExtractor<T> extractor) {
+        return exchange(tenant, uri, HttpMethod.GET, null, extractor);
     }
 
-    private void handleRetryOrThrow(Exception ex, int attempt) {
-        if (attempt < 2) {
-            backoff(attempt + 1);
-        } else if (ex instanceof HttpStatusCodeException httpEx) {
-            throw httpEx;
-        } else {
-            throw new IllegalStateException("Failed calling Shopify API after retries", ex);
+    private <T> T exchange(Tenant tenant, URI uri, HttpMethod method, byte[] body, ResponseExtractor<T> extractor) {
+        String shop = tenant.getShopDomain();
+        HttpHeaders headers = buildHeaders(tenant);
+        if (body != null) headers.setContentType(MediaType.APPLICATION_JSON);
+        for (int attempt = 1; ; attempt++) {
+            rateLimiter.acquire(shop);
+            AtomicBoolean answered = new AtomicBoolean();
+            try {
+                return restTemplate.execute(uri, method, req -> {
+                    req.getHeaders().putAll(headers);
+                    if (body != null) req.getBody().write(body);
+                }, resp -> {
+                    answered.set(true);
+                    rateLimiter.onResponse(shop, resp.getHeaders());
+                    return extractor.extractData(resp);
+                });
+            } catch (HttpStatusCodeException ex) {
+                if (ex.getStatusCode().value() == HttpStatus.TOO_MANY_REQUESTS.value()) {
+                    rateLimiter.onThrottled(shop, ex.getResponseHeaders());
+                    if (attempt >= maxAttempts) throw ex;
+                } else {
+                    rateLimiter.onFailure(shop);
+                    if (!ex.getStatusCode().is5xxServerError() || attempt >= maxAttempts) throw ex;
+                    backoff(attempt);
+                }
+            } catch (RestClientException ex) {
+                if (!answered.get()) rateLimiter.onFailure(shop);
+                if (attempt >= maxAttempts) throw new IllegalStateException("Failed calling Shopify API after retries", ex);
+                backoff(attempt);
+            }
         }
     }
 
@@ -88,20 +137,68 @@ public class ShopifyApiService {
                                      Map<String,String> extraParams,
                                      String rootArrayName) {
         Tenant tenant = tenantService.getRequiredByTenantId(tenantId);
+        URI uri = buildUri(tenant.getShopDomain(), endpointPath, cursorParams(limit, pageInfo, extraParams));
+        return exchange(tenant, uri, resp -> {
+            JsonNode body = objectMapper.readTree(resp.getBody());
+            JsonNode dataArray = rootArrayName == null ? body : body.path(rootArrayName);
+            Map<String,String> cursors = extractPageInfoCursors(resp.getHeaders());
+            return new PagedResult(dataArray, cursors.get("next"), cursors.get("previous"));
+        });
+    }
+
+    /**
+     * Streaming variant of {@link #getCursorPage}: a JsonParser walks the response body and hands each element of
+     * rootArrayName to the consumer as soon as it is read, so no String copy or whole-page tree is ever built.
+     * A page that breaks after elements were emitted is not retried (the consumer already saw part of it).
+     */
+    public StreamedPage streamCursorPage(String tenantId,
+                                        String endpointPath,
+                                        Integer limit,
+                                        String pageInfo,
+                                        Map<String,String> extraParams,
+                                        String rootArrayName,
+                                        Consumer<JsonNode> recordConsumer) {
+        Tenant tenant = tenantService.getRequiredByTenantId(tenantId);
+        URI uri = buildUri(tenant.getShopDomain(), endpointPath, cursorParams(limit, pageInfo, extraParams));
+        return exchange(tenant, uri, resp -> {
+            int records = 0;
+            try (JsonParser parser = objectMapper.getFactory().createParser(resp.getBody())) {
+                if (seekArray(parser, rootArrayName)) {
+                    while (parser.nextToken() != JsonToken.END_ARRAY) {
+                        if (parser.currentToken() == null) throw new IOException("Truncated Shopify response");
+                        recordConsumer.accept(objectMapper.readTree(parser));
+                        records++;
+                    }
+                }
+            } catch (IOException e) {
+                if (records == 0) throw e; // nothing emitted yet: let exchange() retry the page
+                throw new IllegalStateException("Shopify response broke after " + records + " records", e);
+            }
+            Map<String,String> cursors = extractPageInfoCursors(resp.getHeaders());
+            return new StreamedPage(records, cursors.get("next"), cursors.get("previous"));
+        });
+    }
+
+    /** Positions the parser on the START_ARRAY of the root array; false when the body has no such array. */
+    private boolean seekArray(JsonParser parser, String rootArrayName) throws IOException {
+        JsonToken first = parser.nextToken();
+        if (rootArrayName == null) return first == JsonToken.START_ARRAY;
+        if (first != JsonToken.START_OBJECT) return false;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            JsonToken value = parser.nextToken();
+            if (rootArrayName.equals(field)) return value == JsonToken.START_ARRAY;
+            parser.skipChildren();
+        }
+        return false;
+    }
+
+    private Map<String,String> cursorParams(Integer limit, String pageInfo, Map<String,String> extraParams) {
         Map<String,String> params = new LinkedHashMap<>();
         if (limit != null) params.put("limit", String.valueOf(limit));
         if (pageInfo != null && !pageInfo.isBlank()) params.put("page_info", pageInfo);
         if (extraParams != null) extraParams.forEach((k,v) -> { if (v != null) params.put(k, v); });
-
-        URI uri = buildUri(tenant.getShopDomain(), endpointPath, params);
-        ResponseEntity<String> resp = restTemplate.exchange(uri, HttpMethod.GET, new HttpEntity<>(buildHeaders(tenant)), String.class);
-        logRateLimit(resp.getHeaders());
-
-        JsonNode body;
-        try { body = objectMapper.readTree(resp.getBody()); } catch (Exception e) { throw new IllegalStateException("Parse error", e); }
-        JsonNode dataArray = rootArrayName == null ? body : body.path(rootArrayName);
-        Map<String,String> cursors = extractPageInfoCursors(resp.getHeaders());
-        return new PagedResult(dataArray, cursors.get("next"), cursors.get("previous"));
+        return params;
     }
 
     /** Fetch all pages for a collection endpoint using cursor pagination. Use cautiously (may be large). */
@@ -180,11 +277,9 @@ public class ShopifyApiService {
         try { Thread.sleep(Duration.ofSeconds(attempt * 2L).toMillis()); } catch (InterruptedException ignored) { Thread.currentThread().interrupt(); }
     }
 
-    private void logRateLimit(HttpHeaders headers) {
-        String limit = headers.getFirst("X-Shopify-Shop-Api-Call-Limit");
-        if (limit != null) log.debug("Shopify call limit: {}", limit);
-    }
-
     /** Record representing one cursor page */
     public record PagedResult(JsonNode items, String nextPageInfo, String previousPageInfo) {}
+
+    /** Cursor page whose records were handed to a consumer while parsing */
+    public record StreamedPage(int records, String nextPageInfo, String previousPageInfo) {}
 }
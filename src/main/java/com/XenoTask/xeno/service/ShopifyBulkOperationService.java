@@ -0,0 +1,348 @@
+package com.xenotask.xeno.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpMethod;
+import org.springframework.stereotype.Service;
+import org.springframework.web.client.RestTemplate;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.function.ToIntFunction;
+
+/**
+ * Ingest engine built on Shopify bulk operations: submits a bulkOperationRunQuery, polls it until it finishes,
+ * then streams the JSONL result line by line. Child lines (variants, line items) carry __parentId and follow
+ * their parent, so only the current parent is kept in memory while it is reassembled. Each record is mapped
+ * into the REST payload shape the upsert services already understand and handed over in chunks.
+ */
+@Service
+public class ShopifyBulkOperationService {
+    private static final Logger log = LoggerFactory.getLogger(ShopifyBulkOperationService.class);
+
+    private static final String RUN_MUTATION =
+            "mutation run($query: String!) { bulkOperationRunQuery(query: $query) { " +
+            "bulkOperation { id status } userErrors { field message } } }";
+
+    private static final String POLL_QUERY =
+            "query poll($id: ID!) { node(id: $id) { ... on BulkOperation { id status errorCode objectCount url } } }";
+
+    private final ShopifyApiService shopifyApiService;
+    private final RestTemplate restTemplate;
+    private final ObjectMapper objectMapper;
+
+    @Value("${shopify.bulk.poll-interval-ms:5000}")
+    private long pollIntervalMs;
+
+    @Value("${shopify.bulk.timeout-minutes:240}")
+    private long timeoutMinutes;
+
+    @Value("${shopify.bulk.chunk-size:250}")
+    private int chunkSize;
+
+    public ShopifyBulkOperationService(ShopifyApiService shopifyApiService, RestTemplate restTemplate, ObjectMapper objectMapper) {
+        this.shopifyApiService = shopifyApiService;
+        this.restTemplate = restTemplate;
+        this.objectMapper = objectMapper;
+    }
+
+    /** Bulk-exportable collections with their GraphQL query */
+    public enum Entity {
+        CUSTOMERS("{ customers { edges { node { id email firstName lastName phone state note tags createdAt updatedAt " +
+                "numberOfOrders amountSpent { amount } lastOrder { createdAt } emailMarketingConsent { marketingState } " +
+                "defaultAddress { id } addresses { id address1 address2 city province country zip } } } } }"),
+        PRODUCTS("{ products { edges { node { id title handle descriptionHtml vendor productType status tags createdAt " +
+                "updatedAt publishedAt variants { edges { node { id title price compareAtPrice sku inventoryQuantity taxable " +
+                "createdAt updatedAt inventoryItem { requiresShipping measurement { weight { value } } } } } } } } } }"),
+        ORDERS("{ orders { edges { node { id name email displayFinancialStatus displayFulfillmentStatus confirmed createdAt " +
+                "updatedAt cancelledAt cancelReason tags note currencyCode totalPriceSet { shopMoney { amount } } " +
+                "subtotalPriceSet { shopMoney { amount } } totalTaxSet { shopMoney { amount } } " +
+                "totalDiscountsSet { shopMoney { amount } } totalShippingPriceSet { shopMoney { amount } } customer { id } " +
+                "lineItems { edges { node { id title quantity sku vendor originalUnitPriceSet { shopMoney { amount } } " +
+                "totalDiscountSet { shopMoney { amount } } product { id } variant { id } } } } } } } }");
+
+        private final String query;
+
+        Entity(String query) { this.query = query; }
+
+        public String query() { return query; }
+    }
+
+    /**
+     * Runs one bulk export end to end.
+     * @param persistChunk receives REST-shaped records in arrays of up to shopify.bulk.chunk-size and returns how many it processed
+     */
+    public Result run(String tenantId, Entity entity, ToIntFunction<JsonNode> persistChunk) {
+        long t0 = System.nanoTime();
+        String operationId = submit(tenantId, entity);
+        JsonNode operation = awaitCompletion(tenantId, operationId);
+        long exportMs = (System.nanoTime() - t0) / 1_000_000L;
+        String url = operation.path("url").asText(null);
+        if (url == null || url.isBlank()) { // no objects matched; Shopify gives no file
+            log.info("Bulk operation empty tenant={} entity={} exportMs={}", tenantId, entity, exportMs);
+            return new Result(0, exportMs, 0L);
+        }
+        long t1 = System.nanoTime();
+        int records = download(url, entity, persistChunk);
+        long ingestMs = (System.nanoTime() - t1) / 1_000_000L;
+        log.info("Bulk operation ingested tenant={} entity={} records={} exportMs={} ingestMs={}", tenantId, entity, records, exportMs, ingestMs);
+        return new Result(records, exportMs, ingestMs);
+    }
+
+    String submit(String tenantId, Entity entity) {
+        JsonNode data = shopifyApiService.graphql(tenantId, RUN_MUTATION, Map.of("query", entity.query()));
+        JsonNode result = data.path("bulkOperationRunQuery");
+        JsonNode errors = result.path("userErrors");
+        if (errors.isArray() && !errors.isEmpty()) {
+            throw new IllegalStateException("Bulk operation rejected: " + errors.get(0).path("message").asText());
+        }
+        String id = result.path("bulkOperation").path("id").asText(null);
+        if (id == null) throw new IllegalStateException("Bulk operation id missing in Shopify response");
+        log.info("Bulk operation submitted tenant={} entity={} id={}", tenantId, entity, id);
+        return id;
+    }
+
+    JsonNode awaitCompletion(String tenantId, String operationId) {
+        long deadline = System.nanoTime() + timeoutMinutes * 60_000_000_000L;
+        while (true) {
+            JsonNode op = shopifyApiService.graphql(tenantId, POLL_QUERY, Map.of("id", operationId)).path("node");
+            String status = op.path("status").asText("");
+            switch (status) {
+                case "COMPLETED":
+                    return op;
+                case "FAILED", "CANCELED", "CANCELING", "EXPIRED":
+                    throw new IllegalStateException("Bulk operation " + operationId + " ended " + status + " errorCode=" + op.path("errorCode").asText(null));
+                default:
+                    if (System.nanoTime() > deadline) throw new IllegalStateException("Bulk operation " + operationId + " timed out in status " + status);
+                    log.debug("Bulk operation pending tenant={} id={} status={} objects={}", tenantId, operationId, status, op.path("objectCount").asText());
+                    sleep(pollIntervalMs);
+            }
+        }
+    }
+
+    /** Streams the JSONL result (a signed URL, so no Shopify headers) and hands reassembled records over in chunks. */
+    int download(String url, Entity entity, ToIntFunction<JsonNode> persistChunk) {
+        Integer records = restTemplate.execute(URI.create(url), HttpMethod.GET, null, resp -> {
+            Reassembler reassembler = new Reassembler(entity, persistChunk);
+            try (BufferedReader reader = new BufferedReader(new InputStreamReader(resp.getBody(), StandardCharsets.UTF_8))) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    if (!line.isBlank()) reassembler.accept((ObjectNode) objectMapper.readTree(line));
+                }
+            }
+            return reassembler.finish();
+        });
+        return records == null ? 0 : records;
+    }
+
+    /** Groups child lines under their parent, maps finished parents to REST shape and flushes them in chunks */
+    private final class Reassembler {
+        private final Entity entity;
+        private final ToIntFunction<JsonNode> persistChunk;
+        private ObjectNode parent;
+        private final List<JsonNode> children = new ArrayList<>();
+        private ArrayNode chunk = objectMapper.createArrayNode();
+        private int processed;
+
+        Reassembler(Entity entity, ToIntFunction<JsonNode> persistChunk) {
+            this.entity = entity;
+            this.persistChunk = persistChunk;
+        }
+
+        void accept(ObjectNode line) {
+            JsonNode parentId = line.remove("__parentId");
+            if (parentId == null) {
+                completeParent();
+                parent = line;
+            } else if (parent != null && parentId.asText().equals(parent.path("id").asText())) {
+                children.add(line);
+            } else {
+                log.warn("Bulk JSONL child without its parent entity={} parentId={}", entity, parentId.asText());
+            }
+        }
+
+        int finish() {
+            completeParent();
+            flush();
+            return processed;
+        }
+
+        private void completeParent() {
+            if (parent == null) return;
+            chunk.add(toRest(entity, parent, children));
+            parent = null;
+            children.clear();
+            if (chunk.size() >= Math.max(1, chunkSize)) flush();
+        }
+
+        private void flush() {
+            if (chunk.isEmpty()) return;
+            processed += persistChunk.applyAsInt(chunk);
+            chunk = objectMapper.createArrayNode();
+        }
+    }
+
+    private ObjectNode toRest(Entity entity, ObjectNode g, List<JsonNode> children) {
+        return switch (entity) {
+            case CUSTOMERS -> customerToRest(g);
+            case PRODUCTS -> productToRest(g, children);
+            case ORDERS -> orderToRest(g, children);
+        };
+    }
+
+    private ObjectNode customerToRest(JsonNode g) {
+        ObjectNode r = objectMapper.createObjectNode();
+        r.put("id", gidId(g.path("id")));
+        r.put("email", text(g, "email"));
+        r.put("first_name", text(g, "firstName"));
+        r.put("last_name", text(g, "lastName"));
+        r.put("phone", text(g, "phone"));
+        r.put("state", lower(g.path("state")));
+        r.put("note", text(g, "note"));
+        r.put("tags", tags(g.path("tags")));
+        r.put("created_at", text(g, "createdAt"));
+        r.put("updated_at", text(g, "updatedAt"));
+        r.put("orders_count", g.path("numberOfOrders").asInt(0));
+        r.put("total_spent", g.path("amountSpent").path("amount").asText("0"));
+        r.put("last_order_created_at", g.path("lastOrder").path("createdAt").asText(null));
+        r.put("accepts_marketing", "SUBSCRIBED".equals(g.path("emailMarketingConsent").path("marketingState").asText()));
+        long defaultAddressId = gidId(g.path("defaultAddress").path("id"));
+        ArrayNode addresses = r.putArray("addresses");
+        for (JsonNode a : g.path("addresses")) {
+            ObjectNode ra = addresses.addObject();
+            long id = gidId(a.path("id"));
+            ra.put("id", id);
+            ra.put("address1", text(a, "address1"));
+            ra.put("address2", text(a, "address2"));
+            ra.put("city", text(a, "city"));
+            ra.put("province", text(a, "province"));
+            ra.put("country", text(a, "country"));
+            ra.put("zip", text(a, "zip"));
+            ra.put("default", id != 0 && id == defaultAddressId);
+        }
+        return r;
+    }
+
+    private ObjectNode productToRest(JsonNode g, List<JsonNode> variants) {
+        ObjectNode r = objectMapper.createObjectNode();
+        r.put("id", gidId(g.path("id")));
+        r.put("title", text(g, "title"));
+        r.put("handle", text(g, "handle"));
+        r.put("body_html", text(g, "descriptionHtml"));
+        r.put("vendor", text(g, "vendor"));
+        r.put("product_type", text(g, "productType"));
+        r.put("status", lower(g.path("status")));
+        r.put("tags", tags(g.path("tags")));
+        r.put("created_at", text(g, "createdAt"));
+        r.put("updated_at", text(g, "updatedAt"));
+        r.put("published_at", text(g, "publishedAt"));
+        ArrayNode out = r.putArray("variants");
+        for (JsonNode v : variants) {
+            ObjectNode rv = out.addObject();
+            rv.put("id", gidId(v.path("id")));
+            rv.put("title", text(v, "title"));
+            rv.put("price", text(v, "price"));
+            rv.put("compare_at_price", text(v, "compareAtPrice"));
+            rv.put("sku", text(v, "sku"));
+            if (v.hasNonNull("inventoryQuantity")) rv.put("inventory_quantity", v.path("inventoryQuantity").asInt());
+            rv.put("taxable", v.path("taxable").asBoolean(true));
+            rv.put("requires_shipping", v.path("inventoryItem").path("requiresShipping").asBoolean(true));
+            rv.put("weight", v.path("inventoryItem").path("measurement").path("weight").path("value").asText(null));
+            rv.put("created_at", text(v, "createdAt"));
+            rv.put("updated_at", text(v, "updatedAt"));
+        }
+        return r;
+    }
+
+    private ObjectNode orderToRest(JsonNode g, List<JsonNode> lineItems) {
+        ObjectNode r = objectMapper.createObjectNode();
+        r.put("id", gidId(g.path("id")));
+        String name = text(g, "name");
+        r.put("order_number", name == null ? null : name.replace("#", ""));
+        r.put("email", text(g, "email"));
+        r.put("financial_status", lower(g.path("displayFinancialStatus")));
+        r.put("fulfillment_status", fulfillmentStatus(g.path("displayFulfillmentStatus").asText(null)));
+        r.put("confirmed", g.path("confirmed").asBoolean(true));
+        r.put("created_at", text(g, "createdAt"));
+        r.put("updated_at", text(g, "updatedAt"));
+        r.put("cancelled_at", text(g, "cancelledAt"));
+        r.put("cancel_reason", lower(g.path("cancelReason")));
+        r.put("tags", tags(g.path("tags")));
+        r.put("note", text(g, "note"));
+        r.put("currency", text(g, "currencyCode"));
+        r.put("total_price", money(g.path("totalPriceSet")));
+        r.put("subtotal_price", money(g.path("subtotalPriceSet")));
+        r.put("total_tax", money(g.path("totalTaxSet")));
+        r.put("total_discounts", money(g.path("totalDiscountsSet")));
+        String shipping = money(g.path("totalShippingPriceSet"));
+        if (shipping != null) r.putArray("shipping_lines").addObject().put("price", shipping);
+        if (g.path("customer").hasNonNull("id")) r.putObject("customer").put("id", gidId(g.path("customer").path("id")));
+        ArrayNode out = r.putArray("line_items");
+        for (JsonNode li : lineItems) {
+            ObjectNode rl = out.addObject();
+            rl.put("id", gidId(li.path("id")));
+            rl.put("title", text(li, "title"));
+            rl.put("quantity", li.path("quantity").asInt());
+            rl.put("sku", text(li, "sku"));
+            rl.put("vendor", text(li, "vendor"));
+            rl.put("price", money(li.path("originalUnitPriceSet")));
+            rl.put("total_discount", money(li.path("totalDiscountSet")));
+            if (li.path("product").hasNonNull("id")) rl.put("product_id", gidId(li.path("product").path("id")));
+            if (li.path("variant").hasNonNull("id")) rl.put("variant_id", gidId(li.path("variant").path("id")));
+        }
+        return r;
+    }
+
+    /** gid://shopify/Customer/123?model_name=... -> 123 */
+    static long gidId(JsonNode gid) {
+        String s = gid.asText("");
+        int q = s.indexOf('?');
+        if (q >= 0) s = s.substring(0, q);
+        int slash = s.lastIndexOf('/');
+        try {
+            return s.isEmpty() ? 0L : Long.parseLong(s.substring(slash + 1));
+        } catch (NumberFormatException e) {
+            return 0L;
+        }
+    }
+
+    private static String fulfillmentStatus(String graphql) {
+        if (graphql == null || graphql.equals("UNFULFILLED")) return null; // REST reports unfulfilled as null
+        if (graphql.equals("PARTIALLY_FULFILLED")) return "partial";
+        return graphql.toLowerCase(Locale.ROOT);
+    }
+
+    private static String text(JsonNode n, String f) { return n.hasNonNull(f) ? n.get(f).asText() : null; }
+    private static String lower(JsonNode n) { return n.isTextual() ? n.asText().toLowerCase(Locale.ROOT) : null; }
+    private static String money(JsonNode set) { return set.path("shopMoney").hasNonNull("amount") ? set.path("shopMoney").path("amount").asText() : null; }
+
+    private static String tags(JsonNode n) {
+        if (!n.isArray()) return n.isTextual() ? n.asText() : null;
+        List<String> tags = new ArrayList<>();
+        n.forEach(t -> tags.add(t.asText()));
+        return String.join(", ", tags);
+    }
+
+    private void sleep(long ms) {
+        try {
+            Thread.sleep(ms);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for bulk operation", e);
+        }
+    }
+
+    /** Outcome of one bulk export: records handed to the upserts, time Shopify spent exporting, time spent ingesting */
+    public record Result(int records, long exportMs, long ingestMs) {}
+}
@@ -0,0 +1,242 @@
+package com.xenotask.xeno.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.xenotask.xeno.entity.SyncCheckpoint;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.client.HttpClientErrorException;
+
+import java.time.LocalDateTime;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.ToIntFunction;
+
+/**
+ * Producer/consumer loop over a Shopify cursor collection. A virtual thread fetches pages ahead into a bounded
+ * queue (it blocks when the queue is full) while the calling thread persists the current page, so network and
+ * DB time overlap instead of adding up. Pages are handed over strictly in cursor order and the loop ends under
+ * the same conditions as the old fetch-then-upsert loops (empty page, no next page_info, or page limit).
+ * In streaming mode the producer parses each response incrementally and queues chunks of stream-chunk-size
+ * records instead of whole pages, so at most a few chunks of parsed records are on the heap at once.
+ * Every page (or chunk) is persisted in its own transaction; inside a logged sync segment the page's last
+ * transaction also advances the SyncCheckpoint, and an unfinished checkpoint is resumed from its cursor.
+ * Page-limited walks (maxPages set) are not checkpointed.
+ */
+@Service
+public class ShopifyPagePipeline {
+    private static final Logger log = LoggerFactory.getLogger(ShopifyPagePipeline.class);
+
+    private final ShopifyApiService shopifyApiService;
+    private final SyncCheckpointService checkpointService;
+    private final TransactionTemplate transactionTemplate;
+
+    @Value("${sync.pipeline.prefetch-pages:2}")
+    private int prefetchPages;
+
+    @Value("${sync.pipeline.streaming:true}")
+    private boolean streaming;
+
+    @Value("${sync.pipeline.stream-chunk-size:50}")
+    private int streamChunkSize;
+
+    public ShopifyPagePipeline(ShopifyApiService shopifyApiService,
+                               SyncCheckpointService checkpointService,
+                               PlatformTransactionManager transactionManager) {
+        this.shopifyApiService = shopifyApiService;
+        this.checkpointService = checkpointService;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    /**
+     * @param maxPages null for all pages
+     * @param persist  handles one non-empty page (or chunk of a page in streaming mode) on the calling thread and
+     *                 returns the records it processed
+     */
+    public Result run(String tenantId,
+                      String endpointPath,
+                      int limit,
+                      Map<String,String> extraParams,
+                      String rootArrayName,
+                      Integer maxPages,
+                      ToIntFunction<JsonNode> persist) {
+        // a page-limited walk is a different walk: it must neither resume nor close the unlimited walk's checkpoint
+        SyncCheckpoint checkpoint = maxPages == null ? checkpointService.open(tenantId, endpointPath, extraParams) : null;
+        String startCursor = checkpoint == null ? null : checkpoint.getPageInfo();
+        boolean resumed = startCursor != null;
+        LocalDateTime walkStartedAt = resumed ? checkpoint.getWalkStartedAt() : null;
+        BlockingQueue<Item> queue = new ArrayBlockingQueue<>(Math.max(1, prefetchPages));
+        AtomicLong fetchNanos = new AtomicLong();
+        Thread producer = Thread.ofVirtual()
+                .name("shopify-prefetch-" + tenantId + endpointPath)
+                .start(() -> produce(queue, fetchNanos, tenantId, endpointPath, limit, extraParams, rootArrayName, maxPages, startCursor));
+
+        int records = 0;
+        int pageRecords = 0;
+        int pages = 0;
+        long waitNanos = 0;
+        long persistNanos = 0;
+        try {
+            while (true) {
+                long t0 = System.nanoTime();
+                Item item = queue.take();
+                waitNanos += System.nanoTime() - t0;
+                if (item.error() != null) throw item.error();
+                if (item.items() == null) break; // end of cursor
+                if (item.restarted() && checkpoint != null) {
+                    checkpoint = checkpointService.reset(checkpoint);
+                    resumed = false;
+                }
+                long t1 = System.nanoTime();
+                int committedBefore = pageRecords;
+                SyncCheckpoint cp = checkpoint;
+                Page committed = transactionTemplate.execute(status -> {
+                    int n = persist.applyAsInt(item.items());
+                    SyncCheckpoint advanced = cp != null && item.endOfPage()
+                            ? checkpointService.advance(cp, item.nextCursor(), committedBefore + n)
+                            : cp;
+                    return new Page(n, advanced);
+                });
+                persistNanos += System.nanoTime() - t1;
+                records += committed.records();
+                checkpoint = committed.checkpoint();
+                pageRecords += committed.records();
+                if (item.endOfPage()) {
+                    pages++;
+                    pageRecords = 0;
+                }
+            }
+            if (checkpoint != null && !checkpoint.getCompleted()) checkpointService.complete(checkpoint); // ended on an empty page
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for Shopify page", e);
+        } finally {
+            producer.interrupt(); // no-op when the producer already finished
+        }
+
+        Result result = new Result(records, pages, toMs(fetchNanos.get()), toMs(persistNanos), toMs(waitNanos),
+                resumed, resumed ? walkStartedAt : null);
+        SyncMetrics.increment(SyncMetrics.PAGES, pages);
+        SyncMetrics.increment(SyncMetrics.FETCH_MS, result.fetchMs());
+        SyncMetrics.increment(SyncMetrics.PERSIST_MS, result.persistMs());
+        SyncMetrics.increment(SyncMetrics.WAIT_MS, result.waitMs());
+        log.debug("Pipeline done tenant={} endpoint={} pages={} records={} fetchMs={} persistMs={} waitMs={}",
+                tenantId, endpointPath, pages, records, result.fetchMs(), result.persistMs(), result.waitMs());
+        return result;
+    }
+
+    private void produce(BlockingQueue<Item> queue, AtomicLong fetchNanos, String tenantId, String endpointPath, int limit,
+                         Map<String,String> extraParams, String rootArrayName, Integer maxPages, String startCursor) {
+        try {
+            String cursor = startCursor;
+            boolean resuming = startCursor != null;
+            boolean restarted = false;
+            int fetched = 0;
+            while (true) {
+                long t0 = System.nanoTime();
+                int count;
+                String next;
+                try {
+                    if (streaming) {
+                        Chunker chunker = new Chunker(queue, restarted);
+                        ShopifyApiService.StreamedPage sp = shopifyApiService.streamCursorPage(tenantId, endpointPath, limit, cursor, extraParams, rootArrayName, chunker);
+                        chunker.finishPage(sp.nextPageInfo());
+                        fetchNanos.addAndGet(System.nanoTime() - t0 - chunker.blockedNanos);
+                        count = sp.records();
+                        next = sp.nextPageInfo();
+                    } else {
+                        ShopifyApiService.PagedResult pr = shopifyApiService.getCursorPage(tenantId, endpointPath, limit, cursor, extraParams, rootArrayName);
+                        fetchNanos.addAndGet(System.nanoTime() - t0);
+                        JsonNode arr = pr.items();
+                        count = arr.isArray() ? arr.size() : 0;
+                        next = pr.nextPageInfo();
+                        if (count > 0) queue.put(new Item(arr, true, next, restarted, null));
+                    }
+                } catch (HttpClientErrorException e) {
+                    if (!resuming) throw e;
+                    // page_info cursors expire; start the walk over rather than fail the segment
+                    log.warn("Checkpoint cursor rejected tenant={} endpoint={} status={}; restarting from the first page",
+                            tenantId, endpointPath, e.getStatusCode().value());
+                    resuming = false;
+                    restarted = true;
+                    cursor = null;
+                    continue;
+                }
+                resuming = false;
+                restarted = false;
+                if (count == 0) break;
+                fetched++;
+                cursor = next;
+                if (cursor == null || (maxPages != null && fetched >= maxPages)) break;
+            }
+            queue.put(new Item(null, false, null, false, null));
+        } catch (InterruptedException | ProducerInterrupted e) {
+            Thread.currentThread().interrupt(); // consumer gave up
+        } catch (RuntimeException e) {
+            try {
+                queue.put(new Item(null, false, null, false, e)); // surfaces on the consumer after the pages already queued
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private static long toMs(long nanos) { return nanos / 1_000_000L; }
+
+    /** nextCursor is only meaningful on endOfPage; restarted marks the first item after a rejected checkpoint cursor */
+    private record Item(JsonNode items, boolean endOfPage, String nextCursor, boolean restarted, RuntimeException error) {}
+
+    private record Page(int records, SyncCheckpoint checkpoint) {}
+
+    /** Groups streamed records into chunks and queues each full chunk; the page's last chunk is marked endOfPage. */
+    private final class Chunker implements Consumer<JsonNode> {
+        private final BlockingQueue<Item> queue;
+        private boolean restarted;
+        private ArrayNode chunk = JsonNodeFactory.instance.arrayNode();
+        private long blockedNanos;
+
+        Chunker(BlockingQueue<Item> queue, boolean restarted) {
+            this.queue = queue;
+            this.restarted = restarted;
+        }
+
+        @Override
+        public void accept(JsonNode record) {
+            if (chunk.size() >= Math.max(1, streamChunkSize)) flush(false, null); // keeps the page's last record for finishPage
+            chunk.add(record);
+        }
+
+        void finishPage(String nextCursor) { if (!chunk.isEmpty()) flush(true, nextCursor); }
+
+        private void flush(boolean endOfPage, String nextCursor) {
+            long t0 = System.nanoTime();
+            try {
+                queue.put(new Item(chunk, endOfPage, nextCursor, restarted, null));
+                restarted = false;
+            } catch (InterruptedException e) {
+                throw new ProducerInterrupted();
+            } finally {
+                blockedNanos += System.nanoTime() - t0;
+            }
+            chunk = JsonNodeFactory.instance.arrayNode();
+        }
+    }
+
+    /** Carries an interrupt out of the streaming callback, which cannot throw InterruptedException */
+    private static final class ProducerInterrupted extends RuntimeException {}
+
+    /**
+     * Outcome of one pipelined cursor walk with per-stage timings. resumed: the earlier pages were read by a
+     * previous segment, starting at walkStartedAt (UTC; null when unknown).
+     */
+    public record Result(int records, int pages, long fetchMs, long persistMs, long waitMs,
+                         boolean resumed, LocalDateTime walkStartedAt) {}
+}
@@ -0,0 +1,147 @@
+package com.xenotask.xeno.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Client-side mirror of Shopify's REST leaky bucket, one per shop and shared by every sync thread.
+ * Each call adds one unit; the bucket drains at capacity/drainSeconds units per second (2/s for the standard 40).
+ * acquire() blocks while the next call would push the bucket above capacity - headroom or while a Retry-After
+ * from a 429 is pending. Every response re-syncs the level from X-Shopify-Shop-Api-Call-Limit.
+ */
+@Component
+public class ShopifyRateLimiter {
+    private static final Logger log = LoggerFactory.getLogger(ShopifyRateLimiter.class);
+    public static final String CALL_LIMIT_HEADER = "X-Shopify-Shop-Api-Call-Limit";
+
+    @Value("${shopify.rate-limit.default-capacity:40}")
+    private int defaultCapacity;
+
+    @Value("${shopify.rate-limit.drain-seconds:20}")
+    private double drainSeconds;
+
+    @Value("${shopify.rate-limit.headroom:2}")
+    private int headroom;
+
+    @Value("${shopify.rate-limit.default-retry-after-ms:2000}")
+    private long defaultRetryAfterMs;
+
+    private final Map<String, Bucket> buckets = new ConcurrentHashMap<>();
+
+    /** Blocks until a call to the shop fits in the bucket, then reserves it. */
+    public void acquire(String shop) {
+        Bucket b = bucket(shop);
+        while (true) {
+            long waitMs;
+            synchronized (b) {
+                long now = System.nanoTime();
+                b.drain(now, leakPerSecond(b.capacity));
+                int limit = Math.max(1, b.capacity - headroom);
+                if (now < b.blockedUntilNanos) {
+                    waitMs = Math.max(1L, (b.blockedUntilNanos - now) / 1_000_000L);
+                } else if (b.level + 1 <= limit) {
+                    b.level += 1;
+                    b.inFlight++;
+                    return;
+                } else {
+                    waitMs = Math.max(1L, (long) Math.ceil((b.level + 1 - limit) / leakPerSecond(b.capacity) * 1000));
+                }
+            }
+            log.debug("Shopify bucket full shop={} waiting {}ms", shop, waitMs);
+            sleep(waitMs);
+        }
+    }
+
+    /** Successful response: trust the shop's own view of the bucket plus our other calls still in flight. */
+    public void onResponse(String shop, HttpHeaders headers) {
+        Bucket b = bucket(shop);
+        String limit = headers == null ? null : headers.getFirst(CALL_LIMIT_HEADER);
+        synchronized (b) {
+            b.inFlight = Math.max(0, b.inFlight - 1);
+            int[] parsed = parseCallLimit(limit);
+            if (parsed != null) {
+                b.capacity = parsed[1];
+                b.level = parsed[0] + b.inFlight;
+                b.lastNanos = System.nanoTime();
+            }
+        }
+        if (limit != null) log.debug("Shopify call limit shop={} {}", shop, limit);
+    }
+
+    /** 429: the bucket is full; block all callers for Retry-After (or the default). Returns the wait in ms. */
+    public long onThrottled(String shop, HttpHeaders headers) {
+        long retryAfterMs = parseRetryAfterMs(headers == null ? null : headers.getFirst(HttpHeaders.RETRY_AFTER));
+        Bucket b = bucket(shop);
+        synchronized (b) {
+            b.inFlight = Math.max(0, b.inFlight - 1);
+            long now = System.nanoTime();
+            b.level = b.capacity;
+            b.lastNanos = now;
+            b.blockedUntilNanos = Math.max(b.blockedUntilNanos, now + retryAfterMs * 1_000_000L);
+        }
+        log.warn("Shopify throttled shop={} retryAfterMs={}", shop, retryAfterMs);
+        return retryAfterMs;
+    }
+
+    /** Call finished without a usable response (I/O error, 5xx). */
+    public void onFailure(String shop) {
+        Bucket b = bucket(shop);
+        synchronized (b) { b.inFlight = Math.max(0, b.inFlight - 1); }
+    }
+
+    private Bucket bucket(String shop) {
+        return buckets.computeIfAbsent(shop, s -> new Bucket(defaultCapacity));
+    }
+
+    private double leakPerSecond(int capacity) { return capacity / drainSeconds; }
+
+    private int[] parseCallLimit(String value) {
+        if (value == null) return null;
+        int slash = value.indexOf('/');
+        if (slash <= 0) return null;
+        try {
+            return new int[]{Integer.parseInt(value.substring(0, slash).trim()), Integer.parseInt(value.substring(slash + 1).trim())};
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private long parseRetryAfterMs(String value) {
+        if (value == null || value.isBlank()) return defaultRetryAfterMs;
+        try {
+            return Math.max(0L, (long) (Double.parseDouble(value.trim()) * 1000));
+        } catch (NumberFormatException e) {
+            return defaultRetryAfterMs;
+        }
+    }
+
+    private void sleep(long ms) {
+        try {
+            Thread.sleep(ms);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for Shopify rate limit", e);
+        }
+    }
+
+    private static final class Bucket {
+        int capacity;
+        double level;
+        int inFlight;
+        long lastNanos = System.nanoTime();
+        long blockedUntilNanos;
+
+        Bucket(int capacity) { this.capacity = capacity; }
+
+        void drain(long now, double leakPerSecond) {
+            level = Math.max(0d, level - (now - lastNanos) / 1_000_000_000d * leakPerSecond);
+            lastNanos = now;
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package com.xenotask.xeno.service;
+
+import com.xenotask.xeno.entity.SyncCheckpoint;
+import com.xenotask.xeno.entity.SyncLog;
+import com.xenotask.xeno.repository.SyncCheckpointRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+
+/**
+ * Page cursors of the running sync segment. SyncService.runLogged binds its SyncLog to the thread; the page
+ * pipeline then opens (or resumes) a checkpoint per endpoint and advances it in the same transaction as each
+ * committed page. Outside a logged segment nothing is checkpointed.
+ */
+@Service
+public class SyncCheckpointService {
+    private static final Logger log = LoggerFactory.getLogger(SyncCheckpointService.class);
+
+    private final SyncCheckpointRepository checkpointRepository;
+    private final ThreadLocal<SyncLog> currentSegment = new ThreadLocal<>();
+
+    public SyncCheckpointService(SyncCheckpointRepository checkpointRepository) {
+        this.checkpointRepository = checkpointRepository;
+    }
+
+    public void bindSegment(SyncLog logRow) { currentSegment.set(logRow); }
+    public void unbindSegment() { currentSegment.remove(); }
+
+    /** Latest unfinished checkpoint for the walk (re-owned by the current segment) or a fresh one; null outside a segment. */
+    public SyncCheckpoint open(String tenantId, String endpoint, Map<String,String> extraParams) {
+        SyncLog segment = currentSegment.get();
+        if (segment == null) return null;
+        String scope = scope(extraParams);
+        SyncCheckpoint cp = checkpointRepository
+                .findFirstByTenantTenantIdAndEndpointAndScopeAndCompletedFalseOrderByIdDesc(tenantId, endpoint, scope)
+                .orElse(null);
+        if (cp == null) {
+            cp = SyncCheckpoint.builder()
+                    .tenant(segment.getTenant())
+                    .endpoint(endpoint)
+                    .scope(scope)
+                    .walkStartedAt(LocalDateTime.now(ZoneOffset.UTC))
+                    .build();
+        } else {
+            log.info("Resuming sync tenant={} endpoint={} fromLog={} pages={} records={}",
+                    tenantId, endpoint, cp.getSyncLog().getId(), cp.getPagesCommitted(), cp.getRecordsCommitted());
+        }
+        cp.setSyncLog(segment);
+        cp.setUpdatedAt(LocalDateTime.now());
+        return checkpointRepository.save(cp);
+    }
+
+    /** Called inside the page's transaction: the page and the cursor after it commit together. */
+    public SyncCheckpoint advance(SyncCheckpoint cp, String nextPageInfo, int pageRecords) {
+        cp.setPageInfo(nextPageInfo);
+        cp.setPagesCommitted(cp.getPagesCommitted() + 1);
+        cp.setRecordsCommitted(cp.getRecordsCommitted() + pageRecords);
+        cp.setCompleted(nextPageInfo == null);
+        cp.setUpdatedAt(LocalDateTime.now());
+        return checkpointRepository.save(cp);
+    }
+
+    /** Rejected or finished walk: the next sync starts from the first page. */
+    public SyncCheckpoint reset(SyncCheckpoint cp) {
+        cp.setPageInfo(null);
+        cp.setPagesCommitted(0);
+        cp.setRecordsCommitted(0L);
+        cp.setWalkStartedAt(LocalDateTime.now(ZoneOffset.UTC));
+        cp.setUpdatedAt(LocalDateTime.now());
+        return checkpointRepository.save(cp);
+    }
+
+    public SyncCheckpoint complete(SyncCheckpoint cp) {
+        cp.setCompleted(true);
+        cp.setUpdatedAt(LocalDateTime.now());
+        return checkpointRepository.save(cp);
+    }
+
+    private static String scope(Map<String,String> extraParams) {
+        if (extraParams == null || extraParams.isEmpty()) return "";
+        return new TreeMap<>(extraParams).entrySet().stream()
+                .filter(e -> e.getValue() != null)
+                .map(e -> e.getKey() + "=" + e.getValue())
+                .collect(Collectors.joining("&"));
+    }
+}
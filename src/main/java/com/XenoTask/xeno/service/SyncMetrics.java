@@ -0,0 +1,65 @@
+package com.xenotask.xeno.service;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters for the sync segment running on the current thread. Opened and persisted by SyncService.runLogged;
+ * upsert code just calls {@link #increment} and it is a no-op outside a logged segment.
+ */
+public final class SyncMetrics {
+    public static final String ROWS_WRITTEN = "rows.written";
+    public static final String RECORDS_SKIPPED = "records.skipped"; // payload_hash unchanged
+    public static final String PAGES = "pages";
+    public static final String FETCH_MS = "stage.fetch.ms";
+    public static final String PERSIST_MS = "stage.persist.ms";
+    public static final String WAIT_MS = "stage.wait.ms";
+    public static final String ADDRESSES_INSERTED = "addresses.inserted";
+    public static final String ADDRESSES_UPDATED = "addresses.updated";
+    public static final String ADDRESSES_DELETED = "addresses.deleted";
+    public static final String ADDRESSES_SKIPPED = "addresses.skipped";
+    public static final String LINE_ITEMS_INSERTED = "line_items.inserted";
+    public static final String LINE_ITEMS_UPDATED = "line_items.updated";
+    public static final String LINE_ITEMS_DELETED = "line_items.deleted";
+    public static final String LINE_ITEMS_SKIPPED = "line_items.skipped";
+    public static final String VARIANTS_INSERTED = "variants.inserted";
+    public static final String VARIANTS_UPDATED = "variants.updated";
+    public static final String VARIANTS_SKIPPED = "variants.skipped";
+
+    private static final ThreadLocal<SyncMetrics> CURRENT = new ThreadLocal<>();
+
+    private final Map<String, LongAdder> counters = new ConcurrentHashMap<>();
+
+    private SyncMetrics() {}
+
+    public static SyncMetrics open() {
+        SyncMetrics metrics = new SyncMetrics();
+        CURRENT.set(metrics);
+        return metrics;
+    }
+
+    public static SyncMetrics current() { return CURRENT.get(); }
+    public static void clear() { CURRENT.remove(); }
+
+    public static void increment(String key, long delta) {
+        SyncMetrics metrics = CURRENT.get();
+        if (metrics != null) metrics.add(key, delta);
+    }
+
+    public void add(String key, long delta) {
+        counters.computeIfAbsent(key, k -> new LongAdder()).add(delta);
+    }
+
+    public long get(String key) {
+        LongAdder a = counters.get(key);
+        return a == null ? 0L : a.sum();
+    }
+
+    public Map<String, Long> snapshot() {
+        Map<String, Long> copy = new TreeMap<>();
+        counters.forEach((k, v) -> copy.put(k, v.sum()));
+        return copy;
+    }
+}
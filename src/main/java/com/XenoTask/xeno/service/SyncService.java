@@ -1,13 +1,21 @@
 package com.xenotask.xeno.service;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.xenotask.xeno.entity.SyncLog;
 import com.xenotask.xeno.repository.SyncLogRepository;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
 
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.function.Supplier;
 
 @Service
@@ -20,26 +28,74 @@ public class SyncService {
     private final TenantService tenantService;
     private final SyncLogRepository syncLogRepository;
     private final NotificationService notificationService;
+    private final ObjectMapper objectMapper;
+    private final SyncCheckpointService checkpointService;
+    private final BulkSyncService bulkSyncService;
+    private final DailyRollupService rollupService;
+    private final FirstOrderDateService firstOrderDateService;
 
+    @Value("${sync.full.parallel:true}")
+    private boolean parallelFullSync;
 
-    @Transactional
+    @Value("${sync.full.engine:rest}")
+    private String fullSyncEngine;
+
+    /**
+     * Customers and products are independent, so in parallel mode they run at the same time on virtual threads,
+     * each segment in its own transaction; orders start once both finished because they link to both.
+     */
     public void fullSync(String tenantId) {
+        if ("bulk".equalsIgnoreCase(fullSyncEngine)) {
+            bulkSync(tenantId);
+            return;
+        }
         tenantService.getRequiredByTenantId(tenantId); // validate exists
-        runLogged(tenantId, "customers", () -> customerService.syncCustomers(tenantId, 250, null));
-        runLogged(tenantId, "products", () -> productService.syncProducts(tenantId, 250, null));
+        long startNanos = System.nanoTime();
+        Runnable customers = () -> runLogged(tenantId, "customers", () -> customerService.syncCustomers(tenantId, 250, null));
+        Runnable products = () -> runLogged(tenantId, "products", () -> productService.syncProducts(tenantId, 250, null));
+        if (parallelFullSync) {
+            runConcurrently(customers, products);
+        } else {
+            customers.run();
+            products.run();
+        }
         runLogged(tenantId, "orders", () -> orderService.syncOrders(tenantId, null, null, 100, null));
-        log.info("Full sync finished tenant={}", tenantId);
+        rebuildAggregates(tenantId);
+        log.info("Full sync finished tenant={} parallel={} wallMs={}", tenantId, parallelFullSync, (System.nanoTime() - startNanos) / 1_000_000L);
+    }
+
+    /**
+     * Initial load through Shopify bulk operations. Shopify runs one bulk query per shop at a time, so the
+     * segments go one after another; orders still come last because they link to customers and products.
+     */
+    public void bulkSync(String tenantId) {
+        tenantService.getRequiredByTenantId(tenantId);
+        long startNanos = System.nanoTime();
+        runLogged(tenantId, "customers", () -> bulkSyncService.syncCustomers(tenantId));
+        runLogged(tenantId, "products", () -> bulkSyncService.syncProducts(tenantId));
+        runLogged(tenantId, "orders", () -> bulkSyncService.syncOrders(tenantId));
+        rebuildAggregates(tenantId);
+        log.info("Bulk sync finished tenant={} wallMs={}", tenantId, (System.nanoTime() - startNanos) / 1_000_000L);
     }
 
-    /** Incremental sync since provided timestamp for a single tenant */
-    @Transactional
+    /** Incremental sync for a single tenant; since=null resumes each entity from its stored watermark */
     public void incrementalSync(String tenantId, LocalDateTime since) {
         tenantService.getRequiredByTenantId(tenantId);
         runLogged(tenantId, "customers", () -> customerService.syncCustomersUpdatedSince(tenantId, since, 250));
         runLogged(tenantId, "products", () -> productService.syncProductsUpdatedSince(tenantId, since, 250));
         runLogged(tenantId, "orders", () -> orderService.syncOrdersUpdatedSince(tenantId, since, 100, null));
-        log.info("Incremental sync finished tenant={} since={} (updated_at_min)", tenantId, since);
+        log.info("Incremental sync finished tenant={} since={} (updated_at_min)", tenantId, since == null ? "watermark" : since);
+    }
+
+    /**
+     * Page upserts already keep daily rollups and customers' first_order_date current; this backfills what was
+     * stored before either existed, once per tenant.
+     */
+    private void rebuildAggregates(String tenantId) {
+        rollupService.rebuildIfMissing(tenantId); // both log their own failure
+        firstOrderDateService.rebuildIfMissing(tenantId);
     }
+
     private void runLogged(String tenantId, String type, Supplier<Integer> work) {
         SyncLog logRow = SyncLog.builder()
                 .tenant(tenantService.getRequiredByTenantId(tenantId))
@@ -48,20 +104,65 @@ public class SyncService {
                 .recordsProcessed(0)
                 .build();
         logRow = syncLogRepository.save(logRow);
+        long startNanos = System.nanoTime();
+        SyncMetrics metrics = SyncMetrics.open();
+        checkpointService.bindSegment(logRow);
         try {
             int processed = work.get();
             logRow.setRecordsProcessed(processed);
             logRow.setStatus("success");
             logRow.setCompletedAt(LocalDateTime.now());
+            recordThroughput(logRow, metrics, startNanos);
             syncLogRepository.save(logRow);
+            log.info("Sync segment done tenant={} type={} records={} skipped={} rows={} durationMs={} rowsPerSecond={}",
+                    tenantId, type, processed, logRow.getRecordsSkipped(), logRow.getRowsWritten(), logRow.getDurationMs(), logRow.getRowsPerSecond());
         } catch (Exception ex) {
             log.error("Sync segment failed tenant={} type={} msg={}", tenantId, type, ex.getMessage(), ex);
             logRow.setStatus("error");
             logRow.setCompletedAt(LocalDateTime.now());
             logRow.setErrorMessage(ex.getMessage());
+            recordThroughput(logRow, metrics, startNanos);
             syncLogRepository.save(logRow);
             notificationService.sendSyncFailure(tenantId, type, ex.getMessage());
             throw ex; // bubble to caller
+        } finally {
+            SyncMetrics.clear();
+            checkpointService.unbindSegment();
+        }
+    }
+
+    /** Runs the segments on virtual threads and waits for all of them; the first failure is rethrown afterwards. */
+    private void runConcurrently(Runnable... segments) {
+        List<Future<?>> futures = new ArrayList<>();
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (Runnable segment : segments) futures.add(executor.submit(segment));
+        } // close() waits for every segment
+        RuntimeException failure = null;
+        for (Future<?> f : futures) {
+            try {
+                f.get();
+            } catch (ExecutionException e) {
+                RuntimeException cause = e.getCause() instanceof RuntimeException re ? re : new IllegalStateException(e.getCause());
+                if (failure == null) failure = cause; else failure.addSuppressed(cause);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while waiting for sync segments", e);
+            }
+        }
+        if (failure != null) throw failure;
+    }
+
+    private void recordThroughput(SyncLog logRow, SyncMetrics metrics, long startNanos) {
+        long durationMs = Math.max(1L, (System.nanoTime() - startNanos) / 1_000_000L);
+        long rows = metrics.get(SyncMetrics.ROWS_WRITTEN);
+        logRow.setRowsWritten(rows);
+        logRow.setRecordsSkipped(metrics.get(SyncMetrics.RECORDS_SKIPPED));
+        logRow.setDurationMs(durationMs);
+        logRow.setRowsPerSecond(Math.round(rows * 100_000.0 / durationMs) / 100.0);
+        try {
+            logRow.setMetrics(objectMapper.writeValueAsString(metrics.snapshot()));
+        } catch (JsonProcessingException e) {
+            log.warn("Could not serialize sync metrics: {}", e.getMessage());
         }
     }
 }
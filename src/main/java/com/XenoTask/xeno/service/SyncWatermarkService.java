@@ -0,0 +1,122 @@
+package com.xenotask.xeno.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.xenotask.xeno.entity.SyncWatermark;
+import com.xenotask.xeno.repository.SyncWatermarkRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeParseException;
+
+/**
+ * Per-tenant, per-entity high-water marks for incremental syncs. A sync opens a {@link Window}, feeds every
+ * committed page through {@link Window#observe}, and advances the mark once the walk finished. The mark only
+ * moves when the walk started at or before it (no gap) and never past the walk's start minus the overlap,
+ * because a record changed mid-walk may already have been paged over. A walk resumed from a checkpoint is capped
+ * at the start of the original walk, since its earlier pages were read back then and are not read again.
+ */
+@Service
+public class SyncWatermarkService {
+    private static final Logger log = LoggerFactory.getLogger(SyncWatermarkService.class);
+
+    public static final String CUSTOMERS = "customers";
+    public static final String PRODUCTS = "products";
+    public static final String ORDERS = "orders";
+
+    private final SyncWatermarkRepository watermarkRepository;
+
+    @Value("${sync.watermark.overlap-seconds:60}")
+    private long overlapSeconds;
+
+    public SyncWatermarkService(SyncWatermarkRepository watermarkRepository) {
+        this.watermarkRepository = watermarkRepository;
+    }
+
+    public LocalDateTime get(String tenantId, String entity) {
+        return watermarkRepository.findByTenantTenantIdAndEntity(tenantId, entity)
+                .map(SyncWatermark::getHighWater)
+                .orElse(null);
+    }
+
+    /**
+     * Incremental walk: requestedSince overrides the stored mark; null means "from the mark" (or everything when
+     * there is none yet). The window may advance the mark only when it starts at or before it.
+     */
+    public Window openIncremental(String tenantId, String entity, LocalDateTime requestedSince) {
+        LocalDateTime mark = get(tenantId, entity);
+        LocalDateTime since = requestedSince != null ? requestedSince : mark;
+        boolean contiguous = since == null || (mark != null && !since.isAfter(mark));
+        return new Window(tenantId, entity, since, contiguous, nowUtc());
+    }
+
+    /** Unfiltered walk over the whole collection; complete=false for page-limited or filtered walks. */
+    public Window openFull(String tenantId, String entity, boolean complete) {
+        return new Window(tenantId, entity, null, complete, nowUtc());
+    }
+
+    /** Called after the walk's last page committed; a no-op for gapped windows or when nothing was seen. */
+    @Transactional
+    public void advance(Window window) {
+        if (!window.contiguous || window.maxSeen == null) return;
+        if (window.startedAt == null) {
+            log.info("Watermark kept tenant={} entity={}: resumed walk with unknown start", window.tenantId, window.entity);
+            return;
+        }
+        LocalDateTime cap = window.startedAt.minusSeconds(overlapSeconds);
+        LocalDateTime mark = window.maxSeen.isAfter(cap) ? cap : window.maxSeen;
+        if (window.since != null && !mark.isAfter(window.since)) return;
+        watermarkRepository.advance(window.tenantId, window.entity, mark, LocalDateTime.now());
+        log.debug("Watermark advanced tenant={} entity={} highWater={}", window.tenantId, window.entity, mark);
+    }
+
+    private static LocalDateTime nowUtc() { return LocalDateTime.now(ZoneOffset.UTC); }
+
+    /** One sync walk: where it started from and the newest updated_at (UTC) it committed. Confined to one thread. */
+    public static final class Window {
+        private final String tenantId;
+        private final String entity;
+        private final LocalDateTime since;
+        private final boolean contiguous;
+        private LocalDateTime startedAt;
+        private LocalDateTime maxSeen;
+
+        private Window(String tenantId, String entity, LocalDateTime since, boolean contiguous, LocalDateTime startedAt) {
+            this.tenantId = tenantId;
+            this.entity = entity;
+            this.since = since;
+            this.contiguous = contiguous;
+            this.startedAt = startedAt;
+        }
+
+        /** The walk continued a checkpoint begun at originalStart (UTC; null when not recorded) */
+        public void markResumed(LocalDateTime originalStart) {
+            if (originalStart == null || startedAt == null) startedAt = null;
+            else if (originalStart.isBefore(startedAt)) startedAt = originalStart;
+        }
+
+        /** updated_at_min to request, or null for the whole collection */
+        public LocalDateTime since() { return since; }
+
+        public void observe(JsonNode records) {
+            for (JsonNode node : records) {
+                LocalDateTime updatedAt = utc(node.path("updated_at").asText(null));
+                if (updatedAt != null && (maxSeen == null || updatedAt.isAfter(maxSeen))) maxSeen = updatedAt;
+            }
+        }
+
+        private static LocalDateTime utc(String ts) {
+            if (ts == null || ts.isBlank()) return null;
+            try {
+                return OffsetDateTime.parse(ts).withOffsetSameInstant(ZoneOffset.UTC).toLocalDateTime();
+            } catch (DateTimeParseException e) {
+                return null;
+            }
+        }
+    }
+}
@@ -0,0 +1,9 @@
+package com.xenotask.xeno.service;
+
+/**
+ * Published by TenantService/UserTenantAccessService when a tenant starts or stops being synced;
+ * listeners act after the transaction commits.
+ */
+public record TenantLifecycleEvent(String tenantId, Type type) {
+    public enum Type { ACTIVATED, DEACTIVATED, REMOVED }
+}
@@ -6,6 +6,7 @@ import com.xenotask.xeno.exception.TenantNotFoundException;
 import com.xenotask.xeno.security.CryptoService;
 import com.xenotask.xeno.security.UserPrincipal;
 import lombok.RequiredArgsConstructor;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.security.access.AccessDeniedException;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.context.SecurityContextHolder;
@@ -24,6 +25,7 @@ public class TenantService {
     private final TenantRepository tenantRepository;
     private final CryptoService cryptoService;
     private final UserTenantAccessService userTenantAccessService;
+    private final ApplicationEventPublisher eventPublisher;
 
 
     public Tenant getRequiredByTenantId(String tenantId) {
@@ -50,7 +52,24 @@ public class TenantService {
         tenant.setIsActive(true);
         tenant.setCreatedAt(tenant.getCreatedAt() == null ? LocalDateTime.now() : tenant.getCreatedAt());
         tenant.setUpdatedAt(LocalDateTime.now());
-        return tenantRepository.save(tenant);
+        Tenant saved = tenantRepository.save(tenant);
+        eventPublisher.publishEvent(new TenantLifecycleEvent(saved.getTenantId(), TenantLifecycleEvent.Type.ACTIVATED));
+        return saved;
+    }
+
+    /** Pauses or resumes syncing (owner only); the tenant's queue listener follows after commit */
+    @Transactional
+    public Tenant setActive(String tenantId, boolean active) {
+        Integer userId = currentUserId();
+        if (!userTenantAccessService.isOwner(tenantId, userId)) {
+            throw new AccessDeniedException("Only the owner can pause or resume this tenant.");
+        }
+        Tenant tenant = getRequiredByTenantId(tenantId);
+        tenant.setIsActive(active);
+        tenant.setUpdatedAt(LocalDateTime.now());
+        eventPublisher.publishEvent(new TenantLifecycleEvent(tenantId,
+                active ? TenantLifecycleEvent.Type.ACTIVATED : TenantLifecycleEvent.Type.DEACTIVATED));
+        return tenant;
     }
 
     @Transactional
@@ -82,6 +101,7 @@ public class TenantService {
         }
         Tenant tenant = getRequiredByTenantId(tenantId);
         tenantRepository.delete(tenant);
+        eventPublisher.publishEvent(new TenantLifecycleEvent(tenantId, TenantLifecycleEvent.Type.REMOVED));
     }
 
     private Integer currentUserId() {
@@ -8,6 +8,7 @@ import com.xenotask.xeno.repository.TenantRepository;
 import com.xenotask.xeno.repository.UserRepository;
 import com.xenotask.xeno.repository.UserTenantAccessRepository;
 import lombok.RequiredArgsConstructor;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
@@ -29,6 +30,7 @@ public class UserTenantAccessService {
     private final UserTenantAccessRepository userTenantAccessRepository;
     private final UserRepository userRepository;
     private final TenantRepository tenantRepository;
+    private final ApplicationEventPublisher eventPublisher;
 
     /**
      * Create a new tenant and link it to the user
@@ -59,6 +61,7 @@ public class UserTenantAccessService {
                     .updatedAt(LocalDateTime.now())
                     .build();
             tenant = tenantRepository.save(tenant);
+            eventPublisher.publishEvent(new TenantLifecycleEvent(tenant.getTenantId(), TenantLifecycleEvent.Type.ACTIVATED));
         }
 
         // Check if user-tenant relationship already exists
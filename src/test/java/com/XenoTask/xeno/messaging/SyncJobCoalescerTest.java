@@ -0,0 +1,99 @@
+package com.xenotask.xeno.messaging;
+
+import com.xenotask.xeno.service.TenantLifecycleEvent;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SyncJobCoalescerTest {
+
+    private static final LocalDateTime T0 = LocalDateTime.of(2024, 5, 1, 0, 0);
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final SyncJobCoalescer coalescer = new SyncJobCoalescer(registry, Duration.ofMinutes(10));
+
+    private static SyncJobMessage job(String type, LocalDateTime since) {
+        return SyncJobMessage.builder().type(type).since(since).tenantId("t1").build();
+    }
+
+    @Test
+    void incrementalsMergeIntoPendingJobKeepingEarliestSince() {
+        SyncJobMessage first = job("INCREMENTAL", T0.plusDays(2));
+        assertTrue(coalescer.offer(first));
+        assertFalse(coalescer.offer(job("INCREMENTAL", T0)));
+        assertFalse(coalescer.offer(job("INCREMENTAL", T0.plusDays(5))));
+
+        SyncJobMessage run = coalescer.claim(first);
+        assertEquals("INCREMENTAL", run.getType());
+        assertEquals(T0, run.getSince());
+        assertEquals(2.0, registry.counter("sync.jobs.coalesced", "type", "INCREMENTAL").count());
+    }
+
+    @Test
+    void fullSupersedesIncremental() {
+        SyncJobMessage first = job("INCREMENTAL", T0);
+        assertTrue(coalescer.offer(first));
+        assertFalse(coalescer.offer(job("FULL", null)));
+        assertFalse(coalescer.offer(job("INCREMENTAL", T0.minusDays(1))));
+
+        SyncJobMessage run = coalescer.claim(first);
+        assertEquals("FULL", run.getType());
+        assertNull(run.getSince());
+    }
+
+    @Test
+    void claimEndsCoalescingAndUnknownMessagesRunUnchanged() {
+        SyncJobMessage first = job("INCREMENTAL", null);
+        coalescer.offer(first);
+        SyncJobMessage foreign = job("FULL", null);
+        foreign.setJobId("from-another-instance");
+        assertSame(foreign, coalescer.claim(foreign));
+
+        coalescer.claim(first);
+        SyncJobMessage next = job("INCREMENTAL", null);
+        assertTrue(coalescer.offer(next));
+        assertNotEquals(first.getJobId(), next.getJobId());
+    }
+
+    @Test
+    void expiredPendingJobIsReplaced() {
+        SyncJobCoalescer expiring = new SyncJobCoalescer(registry, Duration.ZERO);
+        SyncJobMessage lost = job("INCREMENTAL", null);
+        assertTrue(expiring.offer(lost));
+        SyncJobMessage next = job("INCREMENTAL", null);
+        assertTrue(expiring.offer(next));
+        assertNotEquals(lost.getJobId(), next.getJobId());
+        assertSame(lost, expiring.claim(lost)); // the stale entry is gone
+    }
+
+    @Test
+    void deliveredPendingJobDoesNotExpire() {
+        SyncJobCoalescer expiring = new SyncJobCoalescer(registry, Duration.ZERO);
+        SyncJobMessage first = job("INCREMENTAL", null);
+        expiring.offer(first);
+        expiring.delivered(first);
+        assertFalse(expiring.offer(job("FULL", null)));
+        assertEquals("FULL", expiring.claim(first).getType());
+    }
+
+    @Test
+    void rejectedJobAndRemovedTenantClearThePendingEntry() {
+        SyncJobMessage first = job("INCREMENTAL", null);
+        coalescer.offer(first);
+        coalescer.discard(first);
+        SyncJobMessage second = job("INCREMENTAL", null);
+        assertTrue(coalescer.offer(second));
+
+        coalescer.onTenantLifecycle(new TenantLifecycleEvent("t1", TenantLifecycleEvent.Type.DEACTIVATED));
+        assertTrue(coalescer.offer(job("INCREMENTAL", null)));
+    }
+}
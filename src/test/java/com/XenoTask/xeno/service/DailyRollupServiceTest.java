@@ -0,0 +1,64 @@
+package com.xenotask.xeno.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class DailyRollupServiceTest {
+
+    private static LocalDateTime at(int day, int hour, int minute, int second) {
+        return LocalDateTime.of(2024, 5, day, hour, minute, second);
+    }
+
+    @Test
+    void partialDaysAtBothEndsBecomeEdges() {
+        DailyRollupService.Split s = DailyRollupService.split(at(1, 10, 0, 0), at(4, 6, 0, 0));
+
+        assertEquals(LocalDate.of(2024, 5, 2), s.firstDay());
+        assertEquals(LocalDate.of(2024, 5, 3), s.lastDay());
+        assertEquals(new DailyRollupService.Edge(at(1, 10, 0, 0), at(1, 23, 59, 59)), s.head());
+        assertEquals(new DailyRollupService.Edge(at(4, 0, 0, 0), at(4, 6, 0, 0)), s.tail());
+        assertEquals(List.of(s.head(), s.tail()), s.edges());
+    }
+
+    @Test
+    void wholeDaysNeedNoEdges() {
+        DailyRollupService.Split s = DailyRollupService.split(at(1, 0, 0, 0), at(3, 23, 59, 59));
+
+        assertEquals(LocalDate.of(2024, 5, 1), s.firstDay());
+        assertEquals(LocalDate.of(2024, 5, 3), s.lastDay());
+        assertEquals(List.of(), s.edges());
+    }
+
+    @Test
+    void endAtMidnightKeepsThatInstantAsTail() {
+        // the range is inclusive, so orders created exactly at the closing midnight still count
+        DailyRollupService.Split s = DailyRollupService.split(at(1, 0, 0, 0), at(3, 0, 0, 0));
+
+        assertEquals(LocalDate.of(2024, 5, 1), s.firstDay());
+        assertEquals(LocalDate.of(2024, 5, 2), s.lastDay());
+        assertNull(s.head());
+        assertEquals(new DailyRollupService.Edge(at(3, 0, 0, 0), at(3, 0, 0, 0)), s.tail());
+    }
+
+    @Test
+    void singleWholeDayAfterPartialHead() {
+        DailyRollupService.Split s = DailyRollupService.split(at(1, 23, 0, 0), at(2, 23, 59, 59));
+
+        assertEquals(LocalDate.of(2024, 5, 2), s.firstDay());
+        assertEquals(LocalDate.of(2024, 5, 2), s.lastDay());
+        assertEquals(List.of(new DailyRollupService.Edge(at(1, 23, 0, 0), at(1, 23, 59, 59))), s.edges());
+    }
+
+    @Test
+    void spansWithoutAWholeDayAreNotSplit() {
+        assertNull(DailyRollupService.split(at(1, 10, 0, 0), at(1, 20, 0, 0)));
+        assertNull(DailyRollupService.split(at(1, 10, 0, 0), at(2, 9, 0, 0)));   // crosses midnight, still < 1 day
+        assertNull(DailyRollupService.split(at(1, 0, 0, 0), at(1, 23, 59, 58))); // one second short of the day
+    }
+}
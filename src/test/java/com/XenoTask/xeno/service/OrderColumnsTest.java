@@ -0,0 +1,58 @@
+package com.xenotask.xeno.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class OrderColumnsTest {
+
+    private static final LocalDateTime DAY = LocalDateTime.of(2024, 5, 1, 0, 0);
+
+    private static OrderColumns.Row row(int orderId, int hour, long cents, Integer customerId, String status) {
+        return new OrderColumns.Row(orderId, OrderColumns.epochSecond(DAY.plusHours(hour)), cents, customerId, status);
+    }
+
+    private static OrderColumns base() {
+        OrderColumns.Builder b = new OrderColumns.Builder(4);
+        b.add(row(1, 1, 1000, 10, "paid"));
+        b.add(row(2, 5, 2000, 11, "paid"));
+        b.add(row(3, 30, 500, 10, "refunded"));
+        return b.build();
+    }
+
+    @Test
+    void mergeReplacesChangedOrdersAndKeepsTimeOrder() {
+        // order 1 moves to the next day and changes customer; order 4 is new and lands between the others
+        OrderColumns merged = OrderColumns.merge(base(), Set.of(1, 4),
+                List.of(row(1, 26, 1500, 11, "paid"), row(4, 3, 300, null, "pending")));
+
+        assertEquals(4, merged.size());
+        assertEquals(2300, merged.revenueCents(DAY, DAY.plusHours(23)));
+        assertEquals(2000, merged.revenueCents(DAY.plusHours(24), DAY.plusHours(47)));
+        assertEquals(List.of(
+                        Map.of("date", "2024-05-01", "revenue", new java.math.BigDecimal("23.00")),
+                        Map.of("date", "2024-05-02", "revenue", new java.math.BigDecimal("20.00"))),
+                merged.dailyRevenue(LocalDate.of(2024, 5, 1), LocalDate.of(2024, 5, 2)));
+        List<long[]> top = merged.topCustomers(2);
+        assertEquals(11, top.get(0)[0]);
+        assertEquals(3500, top.get(0)[1]);
+        assertEquals(10, top.get(1)[0]);
+        assertEquals(500, top.get(1)[1]);
+    }
+
+    @Test
+    void replacedIdsWithoutRowsAreDeleted() {
+        OrderColumns merged = OrderColumns.merge(base(), Set.of(2, 99), List.of());
+
+        assertEquals(2, merged.size());
+        assertEquals(1000, merged.revenueCents(DAY, DAY.plusHours(23)));
+        assertEquals(Map.of("paid", 1L, "refunded", 1L), merged.statusCounts());
+        assertEquals(1, merged.topCustomers(5).size());
+    }
+}
@@ -0,0 +1,102 @@
+package com.xenotask.xeno.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.client.RestTemplate;
+
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyMap;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.startsWith;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/** Runs a bulk export against a stubbed GraphQL API and a local server holding the JSONL result */
+class ShopifyBulkOperationServiceTest {
+
+    private static final String ORDERS_JSONL = String.join("\n",
+            "{\"id\":\"gid://shopify/Order/1001\",\"name\":\"#1001\",\"displayFinancialStatus\":\"PAID\",\"displayFulfillmentStatus\":\"UNFULFILLED\",\"tags\":[\"vip\",\"gift\"],\"totalPriceSet\":{\"shopMoney\":{\"amount\":\"25.00\"}},\"totalShippingPriceSet\":{\"shopMoney\":{\"amount\":\"5.00\"}},\"customer\":{\"id\":\"gid://shopify/Customer/77\"}}",
+            "{\"id\":\"gid://shopify/LineItem/5\",\"title\":\"Mug\",\"quantity\":2,\"originalUnitPriceSet\":{\"shopMoney\":{\"amount\":\"10.00\"}},\"product\":{\"id\":\"gid://shopify/Product/9\"},\"variant\":{\"id\":\"gid://shopify/ProductVariant/90\"},\"__parentId\":\"gid://shopify/Order/1001\"}",
+            "{\"id\":\"gid://shopify/LineItem/6\",\"title\":\"Tee\",\"quantity\":1,\"__parentId\":\"gid://shopify/Order/1001\"}",
+            "{\"id\":\"gid://shopify/Order/1002\",\"name\":\"#1002\",\"displayFulfillmentStatus\":\"PARTIALLY_FULFILLED\"}",
+            "");
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private HttpServer server;
+    private ShopifyApiService api;
+    private ShopifyBulkOperationService service;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/result.jsonl", exchange -> {
+            byte[] body = ORDERS_JSONL.getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(200, body.length);
+            exchange.getResponseBody().write(body);
+            exchange.close();
+        });
+        server.start();
+        String url = "http://127.0.0.1:" + server.getAddress().getPort() + "/result.jsonl";
+
+        api = mock(ShopifyApiService.class);
+        when(api.graphql(eq("t1"), startsWith("mutation"), anyMap())).thenReturn(objectMapper.readTree(
+                "{\"bulkOperationRunQuery\":{\"bulkOperation\":{\"id\":\"gid://shopify/BulkOperation/1\",\"status\":\"CREATED\"},\"userErrors\":[]}}"));
+        when(api.graphql(eq("t1"), startsWith("query"), anyMap())).thenReturn(
+                objectMapper.readTree("{\"node\":{\"status\":\"RUNNING\",\"objectCount\":\"2\"}}"),
+                objectMapper.readTree("{\"node\":{\"status\":\"COMPLETED\",\"objectCount\":\"4\",\"url\":\"" + url + "\"}}"));
+
+        service = new ShopifyBulkOperationService(api, new RestTemplate(), objectMapper);
+        ReflectionTestUtils.setField(service, "pollIntervalMs", 1L);
+        ReflectionTestUtils.setField(service, "timeoutMinutes", 1L);
+        ReflectionTestUtils.setField(service, "chunkSize", 1);
+    }
+
+    @AfterEach
+    void tearDown() {
+        server.stop(0);
+    }
+
+    @Test
+    void reassemblesChildrenAndMapsToRestShape() {
+        List<JsonNode> records = new ArrayList<>();
+        ShopifyBulkOperationService.Result result = service.run("t1", ShopifyBulkOperationService.Entity.ORDERS, chunk -> {
+            chunk.forEach(records::add);
+            return chunk.size();
+        });
+
+        assertEquals(2, result.records());
+        JsonNode first = records.get(0);
+        assertEquals(1001L, first.path("id").asLong());
+        assertEquals("1001", first.path("order_number").asText());
+        assertEquals("paid", first.path("financial_status").asText());
+        assertTrue(first.path("fulfillment_status").isNull());
+        assertEquals("vip, gift", first.path("tags").asText());
+        assertEquals("5.00", first.path("shipping_lines").get(0).path("price").asText());
+        assertEquals(77L, first.path("customer").path("id").asLong());
+        assertEquals(2, first.path("line_items").size());
+        assertEquals(90L, first.path("line_items").get(0).path("variant_id").asLong());
+        assertNull(first.path("line_items").get(1).get("__parentId"));
+
+        JsonNode second = records.get(1);
+        assertEquals("partial", second.path("fulfillment_status").asText());
+        assertEquals(0, second.path("line_items").size());
+    }
+
+    @Test
+    void gidIdStripsPrefixAndQuery() {
+        assertEquals(123L, ShopifyBulkOperationService.gidId(objectMapper.getNodeFactory().textNode("gid://shopify/Customer/123?model_name=Customer")));
+        assertEquals(0L, ShopifyBulkOperationService.gidId(objectMapper.getNodeFactory().missingNode()));
+    }
+}